@@ -0,0 +1,63 @@
+package com.ixigua.completion.benchmark;
+
+import com.ixigua.completion.assets.Asset;
+import com.ixigua.completion.assets.ImageAsset;
+import com.ixigua.completion.index.AssetLookupIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+// Filtering 'assetCount' assets by the string typed in a literal. 'scan' is the baseline the index replaced: matching
+// every lookup string like PlainPrefixMatcher does. Building the index is measured separately, it happens once per
+// package snapshot while the queries run on every keystroke.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AssetLookupIndexBenchmark {
+
+    private static final String PACKAGE_NAME = "benchmark";
+
+    @Param({"1000", "10000", "100000"})
+    public int assetCount;
+
+    // A file name that matches a few assets, a folder that matches a hundred and a string that matches nothing
+    @Param({"Icon_42", "module_7/", "missing"})
+    public String prefix;
+
+    private List<Asset> assets;
+    private AssetLookupIndex index;
+
+    @Setup
+    public void setUp() {
+        assets = new ArrayList<>(assetCount);
+        for (int i = 0; i < assetCount; i++) {
+            assets.add(new ImageAsset("assets/images/module_" + (i / 100) + "/icon_" + i + ".png", null, PACKAGE_NAME));
+        }
+        index = new AssetLookupIndex(assets);
+    }
+
+    @Benchmark
+    public AssetLookupIndex build() {
+        return new AssetLookupIndex(assets);
+    }
+
+    @Benchmark
+    public List<Asset> findMatches() {
+        return index.findMatches(prefix, PACKAGE_NAME);
+    }
+
+    @Benchmark
+    public List<Asset> scan() {
+        String pattern = prefix.toLowerCase(Locale.ROOT);
+        List<Asset> matches = new ArrayList<>();
+        for (Asset asset : assets) {
+            if (asset.lookupStringForPackage(PACKAGE_NAME).toLowerCase(Locale.ROOT).contains(pattern)) {
+                matches.add(asset);
+            }
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,58 @@
+package com.ixigua.completion.benchmark;
+
+import com.intellij.mock.MockVirtualFile;
+import com.ixigua.completion.assets.AssetFinder;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+// Expanding a declared asset folder of 'fileCount' files. The benchmark runs without an IDE, so the folder is an
+// in-memory tree of mock files: it measures the walk and the relative paths we build, not the file system.
+// The tree looks like a typical Flutter app: "assets/images" holds 100 files per module folder and each folder
+// has a "2.0x" variant folder.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FlattenRelativePathsBenchmark {
+
+    private static final int FILES_PER_FOLDER = 100;
+
+    @Param({"1000", "10000", "100000"})
+    public int fileCount;
+
+    private MockVirtualFile root;
+    private MockVirtualFile images;
+
+    @Setup
+    public void setUp() {
+        root = new MockVirtualFile(true, "package");
+        MockVirtualFile assets = new MockVirtualFile(true, "assets");
+        images = new MockVirtualFile(true, "images");
+        root.addChild(assets);
+        assets.addChild(images);
+        // Half of the files are in the module folders and half in their variant folders
+        int folderCount = Math.max(1, fileCount / FILES_PER_FOLDER / 2);
+        for (int i = 0; i < folderCount; i++) {
+            MockVirtualFile folder = new MockVirtualFile(true, "module_" + i);
+            MockVirtualFile variants = new MockVirtualFile(true, "2.0x");
+            images.addChild(folder);
+            folder.addChild(variants);
+            for (int j = 0; j < FILES_PER_FOLDER; j++) {
+                folder.addChild(new MockVirtualFile("icon_" + j + ".png"));
+                variants.addChild(new MockVirtualFile("icon_" + j + ".png"));
+            }
+        }
+    }
+
+    @Benchmark
+    public void flattenRecursively(Blackhole blackhole) {
+        AssetFinder.flattenRelativePaths(images, root, (name, file) -> blackhole.consume(name));
+    }
+
+    // Only the direct children of "assets/images" are bundled, so the module folders are not walked at all
+    @Benchmark
+    public void flattenDirectChildrenOnly(Blackhole blackhole) {
+        AssetFinder.flattenRelativePaths(images, root, images, (name, file) -> blackhole.consume(name));
+    }
+}
@@ -0,0 +1,55 @@
+package com.ixigua.completion.benchmark;
+
+import com.ixigua.completion.svg.DefaultMimeDiscoverer;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+// Matching the magic numbers of a file header, like SVGImageReaderSpi does for every image it is asked to decode.
+// Text that matches no pattern is the expensive case, since every matcher of the magic table is tried.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MimeDiscovererBenchmark {
+
+    // The magic is followed by spaces up to this size, patterns at larger offsets fail without reading the data
+    private static final int HEADER_SIZE = 1024;
+
+    @Param({"png", "jpeg", "svg", "text"})
+    public String format;
+
+    private DefaultMimeDiscoverer discoverer;
+    private byte[] header;
+
+    @Setup
+    public void setUp() {
+        discoverer = new DefaultMimeDiscoverer();
+        byte[] magic;
+        switch (format) {
+            case "png":
+                magic = new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+                break;
+            case "jpeg":
+                magic = new byte[]{(byte) 0xff, (byte) 0xd8, (byte) 0xff, (byte) 0xe0, 0, 0x10, 'J', 'F', 'I', 'F', 0};
+                break;
+            case "svg":
+                magic = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                        + "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"24\" height=\"24\">")
+                        .getBytes(StandardCharsets.UTF_8);
+                break;
+            default:
+                magic = "Lorem ipsum dolor sit amet, consectetur adipiscing elit.".getBytes(StandardCharsets.UTF_8);
+                break;
+        }
+        header = new byte[HEADER_SIZE];
+        Arrays.fill(header, (byte) ' ');
+        System.arraycopy(magic, 0, header, 0, magic.length);
+    }
+
+    @Benchmark
+    public String discoverMimeType() {
+        return discoverer.discoverMimeType(header);
+    }
+}
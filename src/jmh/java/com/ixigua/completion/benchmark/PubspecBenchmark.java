@@ -0,0 +1,63 @@
+package com.ixigua.completion.benchmark;
+
+import com.intellij.openapi.util.Pair;
+import com.ixigua.completion.pubspec.PubspecUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Parsing a pubspec and registering assets in it, for pubspecs declaring 'assetCount' assets. Sync Assets registers
+// new files next to the declared ones, so half of the inserted assets are already declared.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PubspecBenchmark {
+
+    private static final int DEPENDENCY_COUNT = 200;
+    private static final int INSERTED_ASSET_COUNT = 200;
+
+    @Param({"100", "1000", "10000"})
+    public int assetCount;
+
+    private String pubspec;
+    private String[] insertedAssets;
+
+    @Setup
+    public void setUp() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("name: benchmark\n");
+        sb.append("description: A synthetic pubspec.\n");
+        sb.append("version: 1.0.0+1\n\n");
+        sb.append("environment:\n  sdk: \">=2.12.0 <3.0.0\"\n\n");
+        sb.append("dependencies:\n  flutter:\n    sdk: flutter\n");
+        for (int i = 0; i < DEPENDENCY_COUNT; i++) {
+            sb.append("  package_").append(i).append(": ^1.").append(i).append(".0\n");
+        }
+        sb.append("\nflutter:\n  uses-material-design: true\n  assets:\n");
+        for (int i = 0; i < assetCount; i++) {
+            sb.append("    - ").append(assetName(i)).append('\n');
+        }
+        sb.append("  fonts:\n    - family: DIN\n      fonts:\n        - asset: fonts/DIN-Regular.ttf\n");
+        pubspec = sb.toString();
+
+        insertedAssets = new String[INSERTED_ASSET_COUNT];
+        for (int i = 0; i < INSERTED_ASSET_COUNT; i++) {
+            insertedAssets[i] = assetName(assetCount - INSERTED_ASSET_COUNT / 2 + i);
+        }
+    }
+
+    private static String assetName(int i) {
+        return "assets/images/module_" + (i / 100) + "/icon_" + i + ".png";
+    }
+
+    @Benchmark
+    public Map<String, Object> parsePubspecInfo() {
+        return PubspecUtil.parsePubspecInfo(pubspec);
+    }
+
+    @Benchmark
+    public Pair<Integer, String> insertAssets() {
+        return PubspecUtil.insertAssets(pubspec, insertedAssets, "\n");
+    }
+}
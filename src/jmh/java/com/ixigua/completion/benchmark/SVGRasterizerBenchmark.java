@@ -0,0 +1,76 @@
+package com.ixigua.completion.benchmark;
+
+import com.ixigua.completion.svg.SVGRasterizer;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+// Rendering SVG assets to completion icons. 'renderCached' paints an SVG whose GVT tree is cached, like when the same
+// asset is shown again. 'renderUncached' cycles through more files than the rasterizer caches, so every call parses
+// the document again, like the first completion in a package.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SVGRasterizerBenchmark {
+
+    private static final int ICON_SIZE = 64;
+    // More than the documents cached by SVGRasterizer, which are evicted least recently used first
+    private static final int UNCACHED_FILE_COUNT = 65;
+
+    // The number of paths in each SVG, an icon has a few while an illustration can have hundreds
+    @Param({"4", "256"})
+    public int pathCount;
+
+    private File folder;
+    private File[] files;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("svg-benchmark").toFile();
+        String svg = createSvg(pathCount);
+        files = new File[UNCACHED_FILE_COUNT];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = new File(folder, "icon_" + i + ".svg");
+            Files.write(files[i].toPath(), svg.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (File file : files) {
+            file.delete();
+        }
+        folder.delete();
+    }
+
+    private static String createSvg(int pathCount) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"24\" height=\"24\" viewBox=\"0 0 24 24\">\n");
+        sb.append("  <g fill=\"none\" stroke=\"#000\" stroke-width=\"1.5\">\n");
+        for (int i = 0; i < pathCount; i++) {
+            double offset = (i % 16) / 2.0;
+            sb.append("    <path d=\"M").append(offset).append(" 2a4 4 0 1 0 8 8 4 4 0 0 0-8-8zM")
+                    .append(20 - offset).append(" 22l-6-6h4v-4\"/>\n");
+        }
+        sb.append("  </g>\n</svg>\n");
+        return sb.toString();
+    }
+
+    @Benchmark
+    public BufferedImage renderCached() throws IOException {
+        return SVGRasterizer.render(files[0], ICON_SIZE, ICON_SIZE);
+    }
+
+    @Benchmark
+    public BufferedImage renderUncached() throws IOException {
+        File file = files[next];
+        next = (next + 1) % files.length;
+        return SVGRasterizer.render(file, ICON_SIZE, ICON_SIZE);
+    }
+}
@@ -0,0 +1,40 @@
+package com.ixigua.completion.benchmark;
+
+import com.ixigua.completion.transform.TransformImage;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+// Scaling a decoded 'size' x 'size' image down to a completion icon, like IconDecorator does
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TransformImageBenchmark {
+
+    private static final int ICON_SIZE = 32;
+
+    @Param({"64", "512", "2048"})
+    public int size;
+
+    private BufferedImage image;
+
+    @Setup
+    public void setUp() {
+        // Wider than high, so the icon is letterboxed
+        image = new BufferedImage(size, size / 2, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setPaint(new GradientPaint(0, 0, Color.red, size, size / 2f, Color.blue));
+            g.fillRect(0, 0, size, size / 2);
+        } finally {
+            g.dispose();
+        }
+    }
+
+    @Benchmark
+    public Image resizeAspectFitCenter() {
+        return TransformImage.resizeAspectFitCenter(image, ICON_SIZE, ICON_SIZE);
+    }
+}
@@ -1,5 +1,6 @@
 package com.ixigua.completion.assets;
 
+import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.VirtualFile;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -7,14 +8,26 @@ import org.jetbrains.annotations.Nullable;
 import javax.swing.*;
 
 public abstract class Asset {
-    private String name;
-    private VirtualFile file;
-    private String sourceDescription;
+    private final String name;
+    private final VirtualFile file;
+    private final String sourceDescription;
+    // Whether other packages refer to this asset as 'packages/{sourceDescription}/name'
+    private final boolean qualifiedInOtherPackages;
+    // The lookup string in other packages, computed on first use since most assets are only used in their own package
+    private String qualifiedLookupString;
 
     public Asset(@NotNull String name, @Nullable VirtualFile file, @Nullable String sourceDescription) {
+        this(name, file, sourceDescription, !StringUtil.isEmpty(sourceDescription));
+    }
+
+    protected Asset(@NotNull String name,
+                    @Nullable VirtualFile file,
+                    @Nullable String sourceDescription,
+                    boolean qualifiedInOtherPackages) {
         this.name = name;
         this.file = file;
         this.sourceDescription = sourceDescription;
+        this.qualifiedInOtherPackages = qualifiedInOtherPackages;
     }
 
     @NotNull
@@ -37,9 +50,29 @@ public abstract class Asset {
     // let's say we have two packages: PA and PB, PA depends on PB and there is an image named 'B.png' in PB.
     // when user type 'B.png' in PA's dart file,  lookupStringForPackage will be called with 'PA'.
     // when user type 'B.png' in PB's dart file,  lookupStringForPackage will be called with 'PB'.
-    // subclasses can choose to return different lookup strings according to different package names
+    // the package which declares the asset uses its name, other packages use 'packages/{source_package}/name'.
+    // Both strings are kept, so looking them up again allocates nothing.
     @NotNull
-    public abstract String lookupStringForPackage(String packageName);
+    public final String lookupStringForPackage(String packageName) {
+        String qualifyingPackage = getQualifyingPackage();
+        if (qualifyingPackage == null || StringUtil.isEmpty(packageName) || packageName.equals(qualifyingPackage)) {
+            return name;
+        }
+        String qualified = qualifiedLookupString;
+        if (qualified == null) {
+            // Strings are immutable, so publishing one through this racy cache is safe
+            qualified = "packages/" + sourceDescription + "/" + name;
+            qualifiedLookupString = qualified;
+        }
+        return qualified;
+    }
+
+    // The package whose name other packages put in front of the name of this asset, as 'packages/{package}/name',
+    // or null if every package uses the plain name
+    @Nullable
+    public final String getQualifyingPackage() {
+        return qualifiedInOtherPackages && !StringUtil.isEmpty(sourceDescription) ? sourceDescription : null;
+    }
 
     @Nullable
     public abstract String typeText();
@@ -47,11 +80,18 @@ public abstract class Asset {
     @Nullable
     public abstract Icon icon();
 
+    // Returns the icon if it is cheap to get, or null if icon() has to load it first, e.g. decode an image file.
+    // The completion uses this to show the lookup element immediately and render the icon in the background.
+    @Nullable
+    public Icon iconIfCached() {
+        return icon();
+    }
+
     @Override
     public String toString() {
         return "Asset{" +
                 "name='" + name + '\'' +
-                ", file=" + file +
+                ", file=" + getFile() +
                 ", bundledPackage='" + sourceDescription + '\'' +
                 '}';
     }
@@ -0,0 +1,75 @@
+package com.ixigua.completion.assets;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+// Everything in a pubspec that the expanded assets of a package depend on: its name and its "assets" and "fonts"
+// declarations. Two pubspecs with equal declarations expand to the same assets, whatever else differs between them.
+// Declarations are also what PubspecDeclarationsIndex stores for every pubspec.
+public final class AssetDeclarations {
+    private final String packageName;
+    // null if the pubspec has no "flutter" section
+    private final List<String> assets;
+    private final List<String> fonts;
+
+    public AssetDeclarations(@NotNull String packageName, @Nullable List<?> assets, @NotNull List<String> fonts) {
+        this.packageName = packageName;
+        if (assets != null) {
+            this.assets = new ArrayList<>(assets.size());
+            for (Object asset : assets) {
+                if (asset != null) {
+                    this.assets.add(asset.toString());
+                }
+            }
+        } else {
+            this.assets = null;
+        }
+        this.fonts = new ArrayList<>(fonts);
+    }
+
+    @NotNull
+    public String getPackageName() {
+        return packageName;
+    }
+
+    public boolean hasFlutterSection() {
+        return assets != null;
+    }
+
+    @NotNull
+    public List<String> getAssets() {
+        return assets != null ? assets : Collections.emptyList();
+    }
+
+    @NotNull
+    public List<String> getFonts() {
+        return fonts;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        AssetDeclarations that = (AssetDeclarations) o;
+        return packageName.equals(that.packageName) && Objects.equals(assets, that.assets) && fonts.equals(that.fonts);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(packageName, assets, fonts);
+    }
+
+    @Override
+    public String toString() {
+        return "AssetDeclarations{" +
+                "packageName='" + packageName + '\'' +
+                ", assets=" + assets +
+                ", fonts=" + fonts +
+                '}';
+    }
+}
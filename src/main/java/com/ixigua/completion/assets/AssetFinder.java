@@ -2,130 +2,206 @@ package com.ixigua.completion.assets;
 
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.progress.ProgressManager;
-import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.util.registry.Registry;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.VFileProperty;
 import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.vfs.VirtualFileVisitor;
+import com.intellij.util.Processor;
+import com.intellij.util.containers.ContainerUtil;
 import com.ixigua.completion.contributor.CompletionContext;
-import com.ixigua.completion.fonts.AndroidFonts;
-import com.ixigua.completion.fonts.IOSFonts;
+import com.ixigua.completion.diagnostics.CompletionTimings;
+import com.ixigua.completion.fonts.PreInstalledFonts;
+import com.ixigua.completion.index.AssetIndex;
+import com.ixigua.completion.index.PubspecDeclarationsIndex;
+import com.ixigua.completion.index.PackageSnapshotKey;
+import com.ixigua.completion.pubspec.PubspecUtil;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
-import java.util.function.Function;
-import java.util.stream.Collectors;
-
-import static com.ixigua.completion.assets.FontAsset.*;
 
 public class AssetFinder {
 
     private static final Logger LOG = Logger.getInstance(AssetFinder.class);
+    // Whether declared folders are expanded the way Flutter bundles them, see isDirectChildrenOnly()
+    private static final String DIRECT_CHILDREN_ONLY_KEY = "flutter.asset.completion.direct.children.only";
 
-    // Parse all assets including:
+    // Feed all assets of 'kind' whose lookup string matches the prefix of the context to the processor, including:
     // 1. "assets" and "fonts" declarations in pubspec.
     // 2. "assets" and "fonts" declarations in dependent packages.
-    // 3. pre-installed fonts on iOS and Android.
-    @NotNull
-    public static List<Asset> findAllAsset(@NotNull CompletionContext context) {
-        List<Asset> ret = new ArrayList<>();
-        ret.addAll(findAllAssetInPubspec(context));
-        ret.addAll(allPreInstalledFonts());
-        return ret;
+    // 3. pre-installed fonts of the enabled platforms, iOS and Android by default.
+    // Assets are produced package by package in this order, so the caller can show the assets of the current package
+    // before the dependencies are looked up. Returns false if the processor stopped the search.
+    public static boolean processAllAsset(@NotNull CompletionContext context,
+                                          @NotNull AssetKind kind,
+                                          @NotNull Processor<? super Asset> processor) {
+        if (kind == AssetKind.NONE) {
+            return true;
+        }
+        AssetIndex index = AssetIndex.getInstance(context.getProject());
+        if (!processMatchingAssets(index, context, context, kind, processor)) {
+            return false;
+        }
+        if (!processAllAssetInPubspec(index, context, kind, processor)) {
+            return false;
+        }
+        if (kind == AssetKind.FILE) {
+            return true;
+        }
+        List<Asset> fonts = PreInstalledFonts.getLookupIndex().findMatches(context.getPrefix(), context.getPackageName());
+        return ContainerUtil.process(fonts, processor);
     }
 
     // Parse all assets directly defined in this pubspec including:
     // 1. "assets" declarations.
     // 2. "fonts" declarations.
+    // The result is cached by AssetIndex, so this is only called when the declarations or the declared folders changed.
+    @NotNull
+    public static PackageAssets findAllMyAssets(@NotNull CompletionContext context, @NotNull PackageSnapshotKey key) {
+        long start = CompletionTimings.start();
+        try {
+            return expandAllMyAssets(context, key);
+        } finally {
+            CompletionTimings.record(CompletionTimings.Stage.FOLDER_WALK, start);
+        }
+    }
+
     @NotNull
-    private static List<Asset> findAllMyAssets(@NotNull CompletionContext context) {
+    private static PackageAssets expandAllMyAssets(@NotNull CompletionContext context, @NotNull PackageSnapshotKey key) {
         VirtualFile pubspec = context.getPubspec();
-        LOG.info("pubspec file " + pubspec);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("pubspec file " + pubspec);
+        }
+        List<AssetRoot> roots = new ArrayList<>();
+        Set<String> watchedPaths = new HashSet<>();
+        VirtualFile packageDirectory = pubspec.getParent();
+        watchedPaths.add(pubspec.getPath());
+        watchedPaths.add(packageDirectory.getPath() + "/" + PubspecUtil.PACKAGES_PATH);
+        watchedPaths.add(packageDirectory.getPath() + "/" + PubspecUtil.PACKAGE_CONFIG_PATH);
         // parse the pubspec file
-        Map<String, Object> pubInfo = context.getPubspecInfoOfCurrentProject();
+        AssetDeclarations declarations = findDeclarations(context);
+        String packageName = declarations.getPackageName();
 
         // It is preferred to find the flutter statement, if there is no, then we assume that there are no assets
-        Object flutterDeclaration = pubInfo.get("flutter");
-        if (!(flutterDeclaration instanceof Map)) {
-            return Collections.emptyList();
+        if (!declarations.hasFlutterSection()) {
+            return new PackageAssets(key, declarations, packageName, AssetTable.EMPTY, roots, watchedPaths);
         }
-        String packageName = context.getPackageName();
-//        Find all declarations under the "assets:" statement
-        List<String> assetsDeclarations = findAssetsDeclarations((Map<String, Object>) flutterDeclaration);
-//        Expand all asset declarations，we will recursively traverse each declared
+//        Expand all asset declarations，by default we will recursively traverse each declared
 //        folder, all sub-files of these folders will be included, which is different from the behavior of Flutter:
-//        Flutter will only include the direct children of each declared folder.
-        final List<Asset> assets = new ArrayList<>(expandAssetsDeclarations(context, assetsDeclarations));
-        // Find all declarations under the "fonts:" statement
-        List<String> fontsDeclarations = findFontsDeclarations((Map<String, Object>) flutterDeclaration);
+//        Flutter will only include the direct children of each declared folder. See isDirectChildrenOnly().
+        AssetTable.Builder assets = new AssetTable.Builder();
+        expandAssetsDeclarations(context, packageName, declarations.getAssets(), key.isDirectChildrenOnly(), roots, watchedPaths, assets);
 //        Expand all font declarations, we only care about the font family and will not verify the existence of the font file
-        assets.addAll(expandFontsDeclarations(fontsDeclarations, packageName));
+        expandFontsDeclarations(declarations.getFonts(), packageName, assets);
 
+        AssetTable table = assets.build();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("find all assets, count: " + table.size());
+        }
+        return new PackageAssets(key, declarations, packageName, table, roots, watchedPaths);
+    }
 
-        LOG.info("find all assets" + assets);
-        return assets;
+    // The declarations in the pubspec of 'context', read from PubspecDeclarationsIndex if it is up to date, so the
+    // pubspecs of dependencies are not parsed at all
+    @NotNull
+    static AssetDeclarations findDeclarations(@NotNull CompletionContext context) {
+        AssetDeclarations indexed = PubspecDeclarationsIndex.getDeclarations(context.getProject(), context.getPubspec());
+        if (indexed != null) {
+            return indexed;
+        }
+        return findDeclarations(context.getPubspecInfoOfCurrentProject());
     }
 
-    private static List<Asset> allPreInstalledFonts() {
-        // Add all pre-installed fonts on iOS
-        List<String> iOS9Fonts = Arrays.asList(IOSFonts.IOS_9_FONT_LIST);
-        final List<Asset> assets = new ArrayList<>(expandFontsDeclarations(iOS9Fonts, PRE_INSTALLED_IOS_9_SOURCE));
-        List<String> iOS8Fonts = Arrays.asList(IOSFonts.IOS_8_FONT_LIST);
-        assets.addAll(expandFontsDeclarations(iOS8Fonts, PRE_INSTALLED_IOS_8_SOURCE));
-        //Add all pre-installed fonts on Android
-        List<String> androidFonts = Arrays.asList(AndroidFonts.FONT_LIST);
-        assets.addAll(expandFontsDeclarations(androidFonts, PRE_INSTALLED_Android_SOURCE));
-        return assets;
+    @NotNull
+    public static AssetDeclarations findDeclarations(@NotNull Map<String, Object> pubspecInfo) {
+        String packageName = PubspecUtil.getPackageName(pubspecInfo);
+        Object flutterDeclaration = pubspecInfo.get("flutter");
+        if (!(flutterDeclaration instanceof Map)) {
+            return new AssetDeclarations(packageName, null, Collections.emptyList());
+        }
+//        Find all declarations under the "assets:" statement
+        List<String> assetsDeclarations = findAssetsDeclarations((Map<String, Object>) flutterDeclaration);
+        // Find all declarations under the "fonts:" statement
+        List<String> fontsDeclarations = findFontsDeclarations((Map<String, Object>) flutterDeclaration);
+        return new AssetDeclarations(packageName, assetsDeclarations, fontsDeclarations);
     }
 
-    // A package may depend on packages listed in '.packages', parse all assets defined in those pubspec files including:
+    // A package may depend on packages listed in '.packages', process all assets defined in those pubspec files including:
     // 1. "assets" declarations.
     // 2. "fonts" declarations.
-    @NotNull
-    private static List<Asset> findAllAssetInPubspec(@NotNull CompletionContext context) {
-        List<Asset> assets = new ArrayList<>();
-        context.getChildren().forEach((s, context1) -> {
-            List<Asset> assetsInThisPackage = findAllMyAssets(context1);
-            assets.addAll(assetsInThisPackage);
-        });
-        return assets;
+    private static boolean processAllAssetInPubspec(@NotNull AssetIndex index,
+                                                    @NotNull CompletionContext context,
+                                                    @NotNull AssetKind kind,
+                                                    @NotNull Processor<? super Asset> processor) {
+        List<CompletionContext> children = new ArrayList<>(context.getChildren().values());
+        // '.packages' also lists the current package, which has been processed first
+        children.removeIf(child -> child.getPubspec().equals(context.getPubspec()));
+        // Expanding packages is dominated by reading pubspecs and walking folders, so cold packages are expanded
+        // concurrently first. The results are still fed to the processor one package after another, in order.
+        index.expandInParallel(children);
+        for (CompletionContext child : children) {
+            ProgressManager.checkCanceled();
+            if (!processMatchingAssets(index, context, child, kind, processor)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean processMatchingAssets(@NotNull AssetIndex index,
+                                                 @NotNull CompletionContext context,
+                                                 @NotNull CompletionContext packageContext,
+                                                 @NotNull AssetKind kind,
+                                                 @NotNull Processor<? super Asset> processor) {
+        PackageAssets packageAssets = index.getPackageAssets(packageContext);
+        long start = CompletionTimings.start();
+        List<Asset> matches = packageAssets.findMatches(context.getPrefix(), context.getPackageName(), kind);
+        CompletionTimings.record(CompletionTimings.Stage.FILTERING, start);
+        return ContainerUtil.process(matches, processor);
     }
 
     @NotNull
     private static List<String> findAssetsDeclarations(@NotNull Map<String, Object> flutterDeclaration) {
         Object ats = flutterDeclaration.get("assets");
-        LOG.info("assets in flutter " + ats);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("assets in flutter " + ats);
+        }
         if (!(ats instanceof List)) {
             return Collections.emptyList();
         }
-        ((List) ats).removeIf(o -> {
-            ProgressManager.checkCanceled();
-            // There may be empty elements under "assets" state，
-            // like:
-            // 1. assets:
-            // 2.  - images
-            // 3.  -
-            // The third line will be parsed as null
-            return o == null;
-        });
-        return (List<String>) ats;
+        // The list belongs to the cached pubspec model, which other threads read at the same time, so it is copied
+        // instead of being filtered in place.
+        // There may be empty elements under "assets" state，
+        // like:
+        // 1. assets:
+        // 2.  - images
+        // 3.  -
+        // The third line will be parsed as null
+        return ContainerUtil.mapNotNull((List<?>) ats, o -> o instanceof String ? (String) o : null);
     }
 
-    @NotNull
-    private static List<Asset> expandAssetsDeclarations(@NotNull CompletionContext context, @NotNull List<String> declarations) {
-        List<Asset> ret = new ArrayList<>();
+    private static void expandAssetsDeclarations(@NotNull CompletionContext context,
+                                                 @NotNull String currentPackage,
+                                                 @NotNull List<String> declarations,
+                                                 boolean directChildrenOnly,
+                                                 @NotNull List<AssetRoot> roots,
+                                                 @NotNull Set<String> watchedPaths,
+                                                 @NotNull AssetTable.Builder ret) {
         declarations.forEach(new Consumer<String>() {
             @Override
             public void accept(String declaration) {
 //                Check frequently if the user cancels the current operation
                 ProgressManager.checkCanceled();
-                if (declaration == null) {
-                    return;
-                }
                 VirtualFile pubspec = context.getPubspec();
                 VirtualFile parent = pubspec.getParent();
+                // Until the declared file shows up we cannot tell which of the candidates below it will be
+                String declaredPath = StringUtil.trimEnd(declaration, "/");
+                watchedPaths.add(parent.getPath() + "/" + declaredPath);
+                watchedPaths.add(parent.getPath() + "/lib/" + declaredPath);
                 VirtualFile child = null;
                 try {
                     child = parent.findFileByRelativePath(declaration);
@@ -165,28 +241,28 @@ public class AssetFinder {
                     }
                     CompletionContext childContext = context.getChild(packageName);
                     VirtualFile assetFile = null;
+                    String libPath = "";
                     if (childContext != null) {
                         VirtualFile childPackageRoot = childContext.getPubspec().getParent();
+                        libPath = childPackageRoot.getPath() + "/lib";
+                        watchedPaths.add(libPath + "/" + assetName);
                         assetFile = childPackageRoot.findFileByRelativePath("lib/" + assetName);
                     }
-                    ret.add(new ImageAsset(assetName, assetFile, packageName));
+                    ret.addFile(assetName, assetFile, libPath, packageName);
                     return;
                 }
-                LOG.info("find assets file " + child);
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("find assets file " + child);
+                }
                 if (!child.exists()) {
                     return;
                 }
-                List<Pair<String, VirtualFile>> filePairs = flattenRelativePaths(child, parent);
-                List<Asset> assets = filePairs.stream().map(new Function<Pair<String, VirtualFile>, Asset>() {
-                    @Override
-                    public Asset apply(Pair<String, VirtualFile> stringVirtualFilePair) {
-                        return new ImageAsset(stringVirtualFilePair.first, stringVirtualFilePair.second, context.getPackageName());
-                    }
-                }).collect(Collectors.toList());
-                ret.addAll(assets);
+                roots.add(new AssetRoot(child, parent, directChildrenOnly));
+                String base = parent.getPath();
+                flattenRelativePaths(child, parent, directChildrenOnly ? child : null,
+                        (name, file) -> ret.addFile(name, file, base, currentPackage));
             }
         });
-        return ret;
     }
 
     @NotNull
@@ -195,7 +271,9 @@ public class AssetFinder {
         if (fts == null) {
             return Collections.emptyList();
         }
-        LOG.info("fonts in flutter " + fts);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("fonts in flutter " + fts);
+        }
         if (!(fts instanceof List)) {
             return Collections.emptyList();
         }
@@ -220,41 +298,110 @@ public class AssetFinder {
         return ret;
     }
 
-    @NotNull
-    private static List<Asset> expandFontsDeclarations(@NotNull List<String> declarations, String currentPackage) {
-        return declarations.stream().map(new Function<String, Asset>() {
-            @Override
-            public Asset apply(String s) {
-                return new FontAsset(s,null, currentPackage);
-            }
-        }).collect(Collectors.toList());
+    private static void expandFontsDeclarations(@NotNull List<String> declarations,
+                                                String currentPackage,
+                                                @NotNull AssetTable.Builder ret) {
+        for (String family : declarations) {
+            ret.addFont(family, currentPackage);
+        }
+    }
+
+    // Feeds every file at or below 'file' to 'consumer' together with its path relative to 'relativeTo', which has to
+    // be an ancestor of 'file'. The relative path of each folder is built once from the path of its parent while
+    // walking down, so a file costs one string concatenation.
+    public static void flattenRelativePaths(@NotNull VirtualFile file,
+                                            @NotNull VirtualFile relativeTo,
+                                            @NotNull BiConsumer<String, VirtualFile> consumer) {
+        flattenRelativePaths(file, relativeTo, null, consumer);
     }
 
-    private static List<Pair<String, VirtualFile>> flattenRelativePaths(@NotNull VirtualFile directory, @NotNull VirtualFile relativeTo) {
-        List<Pair<String, VirtualFile>> ret = new ArrayList<Pair<String, VirtualFile>>();
-        if (!directory.isDirectory()) {
-            ret.add(Pair.create(directory.getPath().replaceFirst(relativeTo.getPath() + "/", ""), directory));
-            return ret;
+    // Like flattenRelativePaths(file, relativeTo, consumer), but if 'directChildrenOf' is set, only files directly in
+    // that folder or directly in one of its resolution variant folders are fed, like Flutter bundles a declared folder.
+    // Other sub-folders are not visited at all.
+    public static void flattenRelativePaths(@NotNull VirtualFile file,
+                                            @NotNull VirtualFile relativeTo,
+                                            @Nullable VirtualFile directChildrenOf,
+                                            @NotNull BiConsumer<String, VirtualFile> consumer) {
+        String relativePath = VfsUtilCore.getRelativePath(file, relativeTo, '/');
+        if (relativePath == null) {
+            LOG.warn(file + " is not below " + relativeTo);
+            return;
+        }
+        if (!file.isDirectory()) {
+            if (directChildrenOf == null || file.equals(directChildrenOf) || isBundledFolder(file.getParent(), directChildrenOf)) {
+                consumer.accept(relativePath, file);
+            }
+            return;
         }
 
-        VirtualFileVisitor.Result result = VfsUtilCore.visitChildrenRecursively(directory, new VirtualFileVisitor<Object>() {
+        // The visitor value of a folder is the relative path its children are prefixed with, e.g. "assets/images/"
+        String rootPrefix = relativePath.isEmpty() ? "" : relativePath + "/";
+        VfsUtilCore.visitChildrenRecursively(file, new VirtualFileVisitor<String>() {
             @Override
-            public boolean visitFile(@NotNull VirtualFile file) {
+            public boolean visitFile(@NotNull VirtualFile child) {
                 ProgressManager.checkCanceled();
-                if (file.isDirectory()) {
+                if (directChildrenOf != null && !isBundledFolder(child.isDirectory() ? child : child.getParent(), directChildrenOf)) {
+                    return false;
+                }
+                if (child.equals(file)) {
+                    setValueForChildren(rootPrefix);
                     return true;
                 }
-                if (file.is(VFileProperty.HIDDEN)) {
+                if (child.isDirectory()) {
+                    setValueForChildren(getCurrentValue() + child.getName() + "/");
                     return true;
                 }
-                if (file.getName().equalsIgnoreCase(".DS_Store")) {
+                if (isIgnoredFile(child)) {
                     return true;
                 }
-                ret.add(Pair.create(file.getPath().replaceFirst(relativeTo.getPath() + "/", ""), file));
+                consumer.accept(getCurrentValue() + child.getName(), child);
                 return true;
             }
         });
+    }
 
-        return ret;
+    // Whether Flutter bundles the files directly in 'folder' when 'declaredFolder' is declared, that is 'folder' is the
+    // declared folder itself or one of its resolution variant folders
+    private static boolean isBundledFolder(@Nullable VirtualFile folder, @NotNull VirtualFile declaredFolder) {
+        if (folder == null) {
+            return false;
+        }
+        if (folder.equals(declaredFolder)) {
+            return true;
+        }
+        return declaredFolder.equals(folder.getParent()) && isVariantFolder(folder.getName());
+    }
+
+    // Whether a folder named 'name' holds the resolution variants of the assets next to it, e.g. "2.0x" or "3x"
+    static boolean isVariantFolder(@NotNull String name) {
+        return isVariantFolder(name, 0, name.length());
+    }
+
+    // Whether name[start, end) is a variant folder name, that is digits, optionally a dot and digits, and 'x'
+    static boolean isVariantFolder(@NotNull String name, int start, int end) {
+        if (end - start < 2 || name.charAt(end - 1) != 'x') {
+            return false;
+        }
+        int dot = -1;
+        for (int i = start; i < end - 1; i++) {
+            char c = name.charAt(i);
+            if (c == '.' && dot < 0 && i > start) {
+                dot = i;
+            } else if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return dot != end - 2;
+    }
+
+    // Whether declared folders are expanded to the files Flutter actually bundles: the direct children of the folder
+    // and of its resolution variant folders. This is cheaper for deep folders and does not offer assets that would
+    // be missing at runtime. By default the folders are expanded recursively.
+    public static boolean isDirectChildrenOnly() {
+        return Registry.is(DIRECT_CHILDREN_ONLY_KEY, false);
+    }
+
+    static boolean isIgnoredFile(@NotNull VirtualFile file) {
+        return file.is(VFileProperty.HIDDEN) || file.getName().equalsIgnoreCase(".DS_Store");
     }
 }
@@ -0,0 +1,27 @@
+package com.ixigua.completion.assets;
+
+// The kinds of assets a string literal can refer to, depending on where it is used.
+public enum AssetKind {
+    // Any asset, e.g. a string assigned to a variable
+    ANY,
+    // Only asset files, e.g. the argument of Image.asset()
+    FILE,
+    // Only font families, e.g. the fontFamily argument of TextStyle()
+    FONT,
+    // No asset at all, e.g. a map key or a log message
+    NONE;
+
+    // Whether assets of this kind include fonts ('font' set) or asset files
+    public boolean accepts(boolean font) {
+        switch (this) {
+            case ANY:
+                return true;
+            case FILE:
+                return !font;
+            case FONT:
+                return font;
+            default:
+                return false;
+        }
+    }
+}
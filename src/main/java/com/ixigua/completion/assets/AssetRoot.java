@@ -0,0 +1,53 @@
+package com.ixigua.completion.assets;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+
+// A file or folder expanded from one "assets:" declaration. Asset names are paths relative to 'relativeTo', which is
+// either the directory of the pubspec or its "lib" folder.
+public class AssetRoot {
+    private final VirtualFile file;
+    private final VirtualFile relativeTo;
+    private final String path;
+    // Whether only the direct children of the folder and of its resolution variant folders are assets
+    private final boolean directChildrenOnly;
+
+    public AssetRoot(@NotNull VirtualFile file, @NotNull VirtualFile relativeTo, boolean directChildrenOnly) {
+        this.file = file;
+        this.relativeTo = relativeTo;
+        this.path = file.getPath();
+        this.directChildrenOnly = directChildrenOnly;
+    }
+
+    @NotNull
+    public VirtualFile getFile() {
+        return file;
+    }
+
+    @NotNull
+    public VirtualFile getRelativeTo() {
+        return relativeTo;
+    }
+
+    public boolean isDirectChildrenOnly() {
+        return directChildrenOnly;
+    }
+
+    // Whether the file at 'path' is this root itself or one of its descendants
+    public boolean contains(@NotNull String path) {
+        return isAncestorOrSelf(this.path, path);
+    }
+
+    static boolean isAncestorOrSelf(@NotNull String ancestor, @NotNull String path) {
+        return path.startsWith(ancestor) && (path.length() == ancestor.length() || path.charAt(ancestor.length()) == '/');
+    }
+
+    @Override
+    public String toString() {
+        return "AssetRoot{" +
+                "path='" + path + '\'' +
+                ", relativeTo=" + relativeTo +
+                ", directChildrenOnly=" + directChildrenOnly +
+                '}';
+    }
+}
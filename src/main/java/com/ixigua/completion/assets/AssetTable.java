@@ -0,0 +1,407 @@
+package com.ixigua.completion.assets;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileWithId;
+import com.intellij.openapi.vfs.newvfs.persistent.PersistentFS;
+import com.intellij.util.ArrayUtil;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+// The assets of one package stored column by column, so a package with tens of thousands of files costs a few arrays
+// instead of an object, a VirtualFile reference and a Pair per file.
+//
+// Every row keeps its name, the id of its file, the folder its name is relative to and the package which bundles it.
+// Folders and packages are shared by many rows and stored once, rows refer to them by index. Files are kept by their
+// VFS id and only looked up when an asset is shown. Asset objects are created on first use by get() and kept, so an
+// asset matched on every keystroke is one object whose lookup strings are computed once. The rows never change once
+// the table is built.
+//
+// The list view is made of logical assets: the resolution variants of an image, e.g. "images/a.png",
+// "images/2.0x/a.png" and "images/3.0x/a.png", are one asset named "images/a.png", like Flutter resolves them. Its
+// icon is read from the smallest variant and its type text lists the variants.
+class AssetTable extends AbstractList<Asset> implements RandomAccess {
+
+    static final AssetTable EMPTY = new Builder().build();
+
+    private static final byte IMAGE = 0;
+    private static final byte FONT = 1;
+    // 'fileIds' value of a row without a file, also used by assets that hold their file directly
+    static final int NO_FILE = 0;
+    // 'baseIds' value of a row without a file
+    private static final int NO_BASE = -1;
+    // 'variantSetIds' value of an asset without resolution variants
+    private static final int NO_VARIANTS = -1;
+    // Marks the rows that are not grouped with resolution variants while the table is built
+    private static final int NOT_GROUPED = -1;
+
+    private final String[] names;
+    private final byte[] kinds;
+    // The VFS id of the file, NO_FILE or, for files without an id, -(index in 'detachedFiles') - 1
+    private final int[] fileIds;
+    // Index in 'bases' of the folder the name is relative to, the path of the file is bases[baseId] + "/" + name
+    private final int[] baseIds;
+    // Index in 'sources' of the package which bundles the asset
+    private final int[] sourceIds;
+    private final String[] bases;
+    private final String[] sources;
+    private final VirtualFile[] detachedFiles;
+
+    // The logical assets: the row of the smallest variant, the name without the variant folder and the index in
+    // 'variantSets' of the variants, or NO_VARIANTS for assets without resolution variants. 'logicalRows' and
+    // 'variantSetIds' are null if no row is a variant.
+    private final int[] logicalRows;
+    private final String[] logicalNames;
+    private final int[] variantSetIds;
+    // Descriptions of the variants of logical assets like "1.0x 2.0x 3.0x", most assets share a few of them
+    private final String[] variantSets;
+    // The logical assets created so far, null until get() is first called for an index
+    private final Asset[] assets;
+
+    private AssetTable(@NotNull Builder builder) {
+        int size = builder.size;
+        names = Arrays.copyOf(builder.names, size);
+        kinds = Arrays.copyOf(builder.kinds, size);
+        fileIds = Arrays.copyOf(builder.fileIds, size);
+        baseIds = Arrays.copyOf(builder.baseIds, size);
+        sourceIds = Arrays.copyOf(builder.sourceIds, size);
+        bases = builder.bases.keySet().toArray(new String[0]);
+        sources = builder.sources.keySet().toArray(new String[0]);
+        detachedFiles = builder.detachedFiles.toArray(VirtualFile.EMPTY_ARRAY);
+
+        // Group the resolution variants of each image by their logical name. Only the rows in a variant folder, and the
+        // rows named like the logical name of one of them, are grouped. Every other row is a logical asset of its own
+        // and costs nothing here, and most tables have no variants at all.
+        VariantFolders folders = new VariantFolders();
+        Map<String, Integer> logicalIds = new HashMap<>();
+        List<String> logicalIdNames = new ArrayList<>();
+        // Per row: the id of its logical name and its scale, or NOT_GROUPED and 0 for rows that are not grouped
+        int[] rowLogicalIds = null;
+        float[] rowScales = null;
+        int groupedCount = 0;
+        for (int i = 0; i < size; i++) {
+            String name = names[i];
+            int fileStart = name.lastIndexOf('/');
+            if (kinds[i] != IMAGE || fileStart <= 0) {
+                continue;
+            }
+            int folderStart = name.lastIndexOf('/', fileStart - 1) + 1;
+            float scale = folders.scaleOf(name, folderStart, fileStart);
+            if (scale == 0) {
+                continue;
+            }
+            if (rowLogicalIds == null) {
+                rowLogicalIds = new int[size];
+                Arrays.fill(rowLogicalIds, NOT_GROUPED);
+                rowScales = new float[size];
+            }
+            String logicalName = name.substring(0, folderStart) + name.substring(fileStart + 1);
+            Integer logicalId = logicalIds.get(logicalName);
+            if (logicalId == null) {
+                logicalId = logicalIdNames.size();
+                logicalIds.put(logicalName, logicalId);
+                logicalIdNames.add(logicalName);
+            }
+            rowLogicalIds[i] = logicalId;
+            rowScales[i] = scale;
+            groupedCount++;
+        }
+        if (rowLogicalIds == null) {
+            logicalRows = null;
+            logicalNames = names;
+            variantSetIds = null;
+            variantSets = ArrayUtil.EMPTY_STRING_ARRAY;
+            assets = new Asset[size];
+            return;
+        }
+        // The images next to the variant folders, e.g. "images/a.png" for "images/2.0x/a.png", are the 1.0x variants
+        for (int i = 0; i < size; i++) {
+            if (kinds[i] == IMAGE && rowLogicalIds[i] == NOT_GROUPED) {
+                Integer logicalId = logicalIds.get(names[i]);
+                if (logicalId != null) {
+                    rowLogicalIds[i] = logicalId;
+                    rowScales[i] = 1;
+                    groupedCount++;
+                }
+            }
+        }
+
+        // Sort the grouped rows so that the variants of one logical asset are adjacent, smallest scale first
+        int[] grouped = new int[groupedCount];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (rowLogicalIds[i] != NOT_GROUPED) {
+                grouped[count++] = i;
+            }
+        }
+        int[] logicalIdOfRow = rowLogicalIds;
+        float[] scaleOfRow = rowScales;
+        IntArrays.quickSort(grouped, (a, b) -> {
+            int cmp = Integer.compare(logicalIdOfRow[a], logicalIdOfRow[b]);
+            if (cmp == 0) {
+                cmp = Integer.compare(sourceIds[a], sourceIds[b]);
+            }
+            if (cmp == 0) {
+                cmp = Integer.compare(baseIds[a], baseIds[b]);
+            }
+            return cmp != 0 ? cmp : Float.compare(scaleOfRow[a], scaleOfRow[b]);
+        });
+
+        // Every run of rows with the same logical name, source and base is one logical asset. It is listed where its
+        // first row is, and its file is the one of its smallest variant.
+        int[] rowGroups = new int[size];
+        Arrays.fill(rowGroups, NOT_GROUPED);
+        int[] groupFirstRows = new int[groupedCount];
+        int[] groupRows = new int[groupedCount];
+        String[] groupNames = new String[groupedCount];
+        int[] groupVariantSetIds = new int[groupedCount];
+        Map<String, Integer> variantSetIndices = new LinkedHashMap<>();
+        int groupCount = 0;
+        for (int from = 0; from < groupedCount; ) {
+            int smallest = grouped[from];
+            int to = from + 1;
+            while (to < groupedCount && rowLogicalIds[grouped[to]] == rowLogicalIds[smallest]
+                    && sourceIds[grouped[to]] == sourceIds[smallest] && baseIds[grouped[to]] == baseIds[smallest]) {
+                to++;
+            }
+            String logicalName = logicalIdNames.get(rowLogicalIds[smallest]);
+            int firstRow = smallest;
+            StringBuilder variants = new StringBuilder();
+            for (int i = from; i < to; i++) {
+                firstRow = Math.min(firstRow, grouped[i]);
+                rowGroups[grouped[i]] = groupCount;
+                if (variants.length() > 0) {
+                    variants.append(' ');
+                }
+                variants.append(rowScales[grouped[i]]).append('x');
+            }
+            groupFirstRows[groupCount] = firstRow;
+            groupRows[groupCount] = smallest;
+            groupNames[groupCount] = logicalName;
+            // An image next to the variant folders of another base or package is no variant of their images
+            groupVariantSetIds[groupCount] = to - from == 1 && names[smallest].length() == logicalName.length()
+                    ? NO_VARIANTS
+                    : variantSetIndices.computeIfAbsent(variants.toString(), k -> variantSetIndices.size());
+            groupCount++;
+            from = to;
+        }
+
+        int logicalCount = size - groupedCount + groupCount;
+        logicalRows = new int[logicalCount];
+        logicalNames = new String[logicalCount];
+        variantSetIds = new int[logicalCount];
+        int index = 0;
+        for (int i = 0; i < size; i++) {
+            int group = rowGroups[i];
+            if (group == NOT_GROUPED) {
+                logicalRows[index] = i;
+                logicalNames[index] = names[i];
+                variantSetIds[index] = NO_VARIANTS;
+                index++;
+            } else if (groupFirstRows[group] == i) {
+                logicalRows[index] = groupRows[group];
+                logicalNames[index] = groupNames[group];
+                variantSetIds[index] = groupVariantSetIds[group];
+                index++;
+            }
+        }
+        variantSets = variantSetIndices.keySet().toArray(ArrayUtil.EMPTY_STRING_ARRAY);
+        assets = new Asset[logicalCount];
+    }
+
+    @Override
+    public int size() {
+        return logicalNames.length;
+    }
+
+    @NotNull
+    @Override
+    public Asset get(int index) {
+        Asset asset = assets[index];
+        if (asset == null) {
+            // The state of an asset is final apart from its own racy string cache, so publishing it through this racy
+            // cache is safe. Two threads may both create it, then one of the equal copies is dropped.
+            asset = createAsset(index);
+            assets[index] = asset;
+        }
+        return asset;
+    }
+
+    @NotNull
+    private Asset createAsset(int index) {
+        int row = logicalRows != null ? logicalRows[index] : index;
+        String name = logicalNames[index];
+        String source = sources[sourceIds[row]];
+        if (kinds[row] == FONT) {
+            return new FontAsset(name, null, source);
+        }
+        String variants = variantSetIds == null || variantSetIds[index] == NO_VARIANTS
+                ? null
+                : variantSets[variantSetIds[index]];
+        int fileId = fileIds[row];
+        if (fileId < 0) {
+            return new ImageAsset(name, detachedFiles[-fileId - 1], NO_FILE, source, variants);
+        }
+        return new ImageAsset(name, null, fileId, source, variants);
+    }
+
+    // The scales of the variant folder names seen so far, so a folder name like "2.0x" is parsed once per table
+    private static class VariantFolders {
+        private String[] names = new String[4];
+        private float[] scales = new float[4];
+        private int size;
+
+        // The scale of the folder name[start, end), e.g. 2 for "2.0x" and 3 for "3x", or 0 if it is no variant folder
+        float scaleOf(@NotNull String name, int start, int end) {
+            int length = end - start;
+            for (int i = 0; i < size; i++) {
+                if (names[i].length() == length && name.regionMatches(start, names[i], 0, length)) {
+                    return scales[i];
+                }
+            }
+            if (!AssetFinder.isVariantFolder(name, start, end)) {
+                return 0;
+            }
+            if (size == names.length) {
+                names = Arrays.copyOf(names, size * 2);
+                scales = Arrays.copyOf(scales, size * 2);
+            }
+            names[size] = name.substring(start, end);
+            scales[size] = Float.parseFloat(name.substring(start, end - 1));
+            return scales[size++];
+        }
+    }
+
+    // Whether the index-th asset is a font family, read from the table without creating the asset
+    boolean isFont(int index) {
+        return kinds[logicalRows != null ? logicalRows[index] : index] == FONT;
+    }
+
+    // Returns the rows whose file is neither at nor below any of 'paths'
+    @NotNull
+    AssetTable withoutPaths(@NotNull Collection<String> paths) {
+        Builder builder = new Builder();
+        for (int i = 0; i < names.length; i++) {
+            if (baseIds[i] == NO_BASE || !isBelowAny(paths, bases[baseIds[i]], names[i])) {
+                builder.addRow(this, i);
+            }
+        }
+        return builder.size == names.length ? this : builder.build();
+    }
+
+    private static boolean isBelowAny(@NotNull Collection<String> paths, @NotNull String base, @NotNull String name) {
+        for (String path : paths) {
+            if (isAncestorOrSelf(path, base, name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // AssetRoot.isAncestorOrSelf(ancestor, base + "/" + name) without building the path
+    private static boolean isAncestorOrSelf(@NotNull String ancestor, @NotNull String base, @NotNull String name) {
+        if (ancestor.length() <= base.length()) {
+            return AssetRoot.isAncestorOrSelf(ancestor, base);
+        }
+        if (!ancestor.startsWith(base) || ancestor.charAt(base.length()) != '/') {
+            return false;
+        }
+        int offset = base.length() + 1;
+        int length = ancestor.length() - offset;
+        return name.regionMatches(0, ancestor, offset, length) && (name.length() == length || name.charAt(length) == '/');
+    }
+
+    // Collects rows and builds an immutable table from them
+    static class Builder {
+        private String[] names = new String[16];
+        private byte[] kinds = new byte[16];
+        private int[] fileIds = new int[16];
+        private int[] baseIds = new int[16];
+        private int[] sourceIds = new int[16];
+        private int size;
+        // Shared values in the order they were first seen, mapped to their index
+        private final Map<String, Integer> bases = new LinkedHashMap<>();
+        private final Map<String, Integer> sources = new LinkedHashMap<>();
+        private final List<VirtualFile> detachedFiles = new ArrayList<>();
+
+        Builder() {
+        }
+
+        // Starts with all rows of 'table', including every variant
+        Builder(@NotNull AssetTable table) {
+            for (int i = 0; i < table.names.length; i++) {
+                addRow(table, i);
+            }
+        }
+
+        // Adds an asset file, 'name' is its path relative to 'base'
+        @NotNull
+        Builder addFile(@NotNull String name, @Nullable VirtualFile file, @NotNull String base, @Nullable String source) {
+            int fileId;
+            if (file == null) {
+                fileId = NO_FILE;
+            } else if (file instanceof VirtualFileWithId) {
+                fileId = ((VirtualFileWithId) file).getId();
+            } else {
+                detachedFiles.add(file);
+                fileId = -detachedFiles.size();
+            }
+            add(name, IMAGE, fileId, file != null ? intern(bases, base) : NO_BASE, source);
+            return this;
+        }
+
+        @NotNull
+        Builder addFont(@NotNull String family, @Nullable String source) {
+            add(family, FONT, NO_FILE, NO_BASE, source);
+            return this;
+        }
+
+        private void addRow(@NotNull AssetTable table, int row) {
+            int fileId = table.fileIds[row];
+            if (fileId < 0) {
+                detachedFiles.add(table.detachedFiles[-fileId - 1]);
+                fileId = -detachedFiles.size();
+            }
+            int baseId = table.baseIds[row] == NO_BASE ? NO_BASE : intern(bases, table.bases[table.baseIds[row]]);
+            add(table.names[row], table.kinds[row], fileId, baseId, table.sources[table.sourceIds[row]]);
+        }
+
+        private void add(@NotNull String name, byte kind, int fileId, int baseId, @Nullable String source) {
+            if (size == names.length) {
+                int capacity = size * 2;
+                names = Arrays.copyOf(names, capacity);
+                kinds = Arrays.copyOf(kinds, capacity);
+                fileIds = Arrays.copyOf(fileIds, capacity);
+                baseIds = Arrays.copyOf(baseIds, capacity);
+                sourceIds = Arrays.copyOf(sourceIds, capacity);
+            }
+            names[size] = name;
+            kinds[size] = kind;
+            fileIds[size] = fileId;
+            baseIds[size] = baseId;
+            sourceIds[size] = intern(sources, source);
+            size++;
+        }
+
+        private static int intern(@NotNull Map<String, Integer> values, @Nullable String value) {
+            return values.computeIfAbsent(value, v -> values.size());
+        }
+
+        int size() {
+            return size;
+        }
+
+        @NotNull
+        AssetTable build() {
+            return new AssetTable(this);
+        }
+    }
+
+    // Looks up the file of an asset by its VFS id when it is needed, e.g. to render its icon
+    @Nullable
+    static VirtualFile findFileById(int fileId) {
+        return fileId == NO_FILE ? null : PersistentFS.getInstance().findFileById(fileId);
+    }
+}
@@ -1,7 +1,6 @@
 package com.ixigua.completion.assets;
 
 import com.intellij.openapi.diagnostic.Logger;
-import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.ixigua.completion.icon.IconDecorator;
 import org.jetbrains.annotations.NotNull;
@@ -12,37 +11,15 @@ import javax.swing.*;
 public class FontAsset extends Asset {
 
     private static final Logger LOG = Logger.getInstance(FontAsset.class);
-    static final String PRE_INSTALLED_IOS_8_SOURCE = "iOS 8 Fonts";
-    static final String PRE_INSTALLED_IOS_9_SOURCE = "iOS 9 Fonts";
-    static final String PRE_INSTALLED_Android_SOURCE = "Android Fonts";
 
     public FontAsset(@NotNull String name, @Nullable VirtualFile file, @Nullable String sourceDescription) {
         super(name, file, sourceDescription);
     }
 
-    @NotNull
-    @Override
-    public String lookupStringForPackage(String packageName) {
-        if (StringUtil.isEmpty(packageName)) {
-            return getName();
-        }
-        if (StringUtil.isEmpty(getSourceDescription())) {
-            return getName();
-        }
-        if (packageName.contentEquals(getSourceDescription())) {
-            return getName();
-        }
-        if (getSourceDescription().contentEquals(PRE_INSTALLED_IOS_8_SOURCE)) {
-            return getName();
-        }
-        if (getSourceDescription().contentEquals(PRE_INSTALLED_IOS_9_SOURCE)) {
-            return getName();
-        }
-        if (getSourceDescription().contentEquals(PRE_INSTALLED_Android_SOURCE)) {
-            return getName();
-        }
-        //the package named with 'packageName' dos't declare this font, so we return 'packages/{source_package}/name'
-        return "packages/" + getSourceDescription() + "/" + getName();
+    // Creates a font pre-installed on a platform, 'platformDescription' is e.g. "iOS 9 Fonts". Pre-installed fonts
+    // are available in every package under their plain family name.
+    public FontAsset(@NotNull String name, @NotNull String platformDescription) {
+        super(name, null, platformDescription, false);
     }
 
     @Nullable
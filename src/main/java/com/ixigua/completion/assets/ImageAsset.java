@@ -1,7 +1,6 @@
 package com.ixigua.completion.assets;
 
 import com.intellij.openapi.diagnostic.Logger;
-import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.ixigua.completion.icon.IconDecorator;
 import org.jetbrains.annotations.NotNull;
@@ -13,44 +12,51 @@ public class ImageAsset extends Asset {
 
     private static final Logger LOG = Logger.getInstance(FontAsset.class);
 
+    // The VFS id of the file of assets read from an AssetTable, which looks the file up only when it is needed
+    private final int fileId;
+    // The resolution variants of the image, e.g. "1.0x 2.0x 3.0x", or null if it has none
+    private final String variants;
+
     public ImageAsset(@NotNull String name, @Nullable VirtualFile file, @Nullable String sourceDescription) {
+        this(name, file, AssetTable.NO_FILE, sourceDescription, null);
+    }
+
+    ImageAsset(@NotNull String name,
+               @Nullable VirtualFile file,
+               int fileId,
+               @Nullable String sourceDescription,
+               @Nullable String variants) {
         super(name, file, sourceDescription);
+        this.fileId = fileId;
+        this.variants = variants;
     }
 
-    @NotNull
+    @Nullable
     @Override
-    public String lookupStringForPackage(String packageName) {
-        if (StringUtil.isEmpty(packageName)) {
-            return getName();
-        }
-        if (StringUtil.isEmpty(getSourceDescription())) {
-            return getName();
-        }
-        if (packageName.contentEquals(getSourceDescription())) {
-            return getName();
-        }
-        //the package named with 'packageName' dos't declare this asset, so we return 'packages/{source_package}/name'.
-        return "packages/" + getSourceDescription() + "/" + getName();
+    public VirtualFile getFile() {
+        VirtualFile file = super.getFile();
+        return file != null ? file : AssetTable.findFileById(fileId);
     }
 
     @Nullable
     @Override
     public String typeText() {
-        return null;
+        return variants;
     }
 
-    @NotNull
-    private String getCacheKey() {
-        VirtualFile file = getFile();
-        //      Add the timestamp of the file to the cache key so that when the file changes, we can get different icon
-        String fullName = getSourceDescription() + "/" + getName();
-        return file == null ? fullName : (fullName + file.getTimeStamp());
+    @Nullable
+    @Override
+    public Icon icon() {
+        return IconDecorator.get(getFile());
     }
 
     @Nullable
     @Override
-    public Icon icon() {
+    public Icon iconIfCached() {
         VirtualFile file = getFile();
-        return IconDecorator.get(file, getCacheKey());
+        if (file == null) {
+            return IconDecorator.blankIcon();
+        }
+        return IconDecorator.getCached(file);
     }
 }
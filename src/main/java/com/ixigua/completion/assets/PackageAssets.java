@@ -0,0 +1,161 @@
+package com.ixigua.completion.assets;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import com.ixigua.completion.contributor.CompletionContext;
+import com.ixigua.completion.index.AssetLookupIndex;
+import com.ixigua.completion.index.PackageSnapshotKey;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+// All assets declared directly in one pubspec file, including "assets" and "fonts" declarations.
+// Instances are immutable: when files under the declared folders change we create a patched copy instead of
+// modifying the existing one, so a completion running concurrently always sees a consistent list.
+public class PackageAssets {
+    // The pubspec version the declarations were expanded from
+    private final PackageSnapshotKey key;
+    private final AssetDeclarations declarations;
+    private final String packageName;
+    private final AssetTable assets;
+    private final List<AssetRoot> roots;
+    // Paths whose creation, deletion or modification can change the result of expanding the declarations,
+    // e.g. the pubspec itself, declared folders that do not exist yet and the package config files
+    private final Set<String> watchedPaths;
+    // Built on the first completion in the package, one index serves every asset kind and every consuming package
+    private volatile AssetLookupIndex lookupIndex;
+
+    PackageAssets(@NotNull PackageSnapshotKey key,
+                  @NotNull AssetDeclarations declarations,
+                  @NotNull String packageName,
+                  @NotNull AssetTable assets,
+                  @NotNull List<AssetRoot> roots,
+                  @NotNull Set<String> watchedPaths) {
+        this.key = key;
+        this.declarations = declarations;
+        this.packageName = packageName;
+        this.assets = assets;
+        this.roots = Collections.unmodifiableList(roots);
+        this.watchedPaths = Collections.unmodifiableSet(watchedPaths);
+    }
+
+    @NotNull
+    public PackageSnapshotKey getKey() {
+        return key;
+    }
+
+    @NotNull
+    public String getPackageName() {
+        return packageName;
+    }
+
+    @NotNull
+    public List<Asset> getAssets() {
+        return assets;
+    }
+
+    @NotNull
+    public AssetLookupIndex getLookupIndex() {
+        AssetLookupIndex index = lookupIndex;
+        if (index == null) {
+            // Two threads may build the index at the same time, then one of the equal copies is dropped
+            index = new AssetLookupIndex(assets);
+            lookupIndex = index;
+        }
+        return index;
+    }
+
+    // Returns the assets of 'kind' whose lookup string in 'packageName' contains 'prefix' ignoring case.
+    // The kind is checked on the table, so the index also serves completions that only accept fonts or files.
+    @NotNull
+    public List<Asset> findMatches(@NotNull String prefix, @NotNull String packageName, @NotNull AssetKind kind) {
+        IntPredicate filter = kind == AssetKind.ANY ? null : index -> kind.accepts(assets.isFont(index));
+        return getLookupIndex().findMatches(prefix, packageName, filter);
+    }
+
+    // Returns this snapshot under the 'key' of a newer version of the pubspec of 'context' if that version declares
+    // the same assets, e.g. when only a dependency was edited, or null if the declarations have to be expanded again.
+    // The lookup index is shared, since it only depends on the assets.
+    @Nullable
+    public PackageAssets reuseFor(@NotNull CompletionContext context, @NotNull PackageSnapshotKey key) {
+        if (this.key.isDirectChildrenOnly() != key.isDirectChildrenOnly()
+                || !declarations.equals(AssetFinder.findDeclarations(context))) {
+            return null;
+        }
+        PackageAssets reused = new PackageAssets(key, declarations, packageName, assets, roots, watchedPaths);
+        reused.lookupIndex = lookupIndex;
+        return reused;
+    }
+
+    // Whether a change at 'path' can only be handled by expanding all declarations again
+    public boolean isInvalidatedBy(@NotNull String path) {
+        for (String watchedPath : watchedPaths) {
+            if (AssetRoot.isAncestorOrSelf(path, watchedPath)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Whether the file at 'path' is inside one of the declared asset folders
+    public boolean covers(@NotNull String path) {
+        for (AssetRoot root : roots) {
+            if (root.contains(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Returns a copy without the assets located at or below any of 'paths'
+    @NotNull
+    public PackageAssets withoutPaths(@NotNull Collection<String> paths) {
+        AssetTable remaining = assets.withoutPaths(paths);
+        if (remaining == assets) {
+            return this;
+        }
+        return new PackageAssets(key, declarations, packageName, remaining, roots, watchedPaths);
+    }
+
+    // Returns a copy including 'files' (and every file below the folders among them) for each root that contains
+    // them. The table is copied once, however many files are added.
+    @NotNull
+    public PackageAssets withFiles(@NotNull Collection<VirtualFile> files) {
+        AssetTable.Builder builder = new AssetTable.Builder(assets);
+        int size = builder.size();
+        for (VirtualFile file : files) {
+            if (!file.isDirectory() && AssetFinder.isIgnoredFile(file)) {
+                continue;
+            }
+            String path = file.getPath();
+            for (AssetRoot root : roots) {
+                if (!root.contains(path)) {
+                    continue;
+                }
+                VirtualFile relativeTo = root.getRelativeTo();
+                String base = relativeTo.getPath();
+                VirtualFile directChildrenOf = root.isDirectChildrenOnly() ? root.getFile() : null;
+                AssetFinder.flattenRelativePaths(file, relativeTo, directChildrenOf,
+                        (name, child) -> builder.addFile(name, child, base, packageName));
+            }
+        }
+        if (builder.size() == size) {
+            return this;
+        }
+        return new PackageAssets(key, declarations, packageName, builder.build(), roots, watchedPaths);
+    }
+
+    @Override
+    public String toString() {
+        return "PackageAssets{" +
+                "key=" + key +
+                ", packageName='" + packageName + '\'' +
+                ", assets=" + assets.size() +
+                ", roots=" + roots +
+                '}';
+    }
+}
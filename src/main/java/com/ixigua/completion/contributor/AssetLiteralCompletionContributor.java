@@ -1,31 +1,40 @@
 package com.ixigua.completion.contributor;
 
 import com.intellij.codeInsight.completion.*;
+import com.intellij.codeInsight.lookup.LookupElement;
 import com.intellij.codeInsight.lookup.LookupElementBuilder;
+import com.intellij.codeInsight.lookup.LookupElementPresentation;
+import com.intellij.codeInsight.lookup.LookupElementRenderer;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.DumbAware;
+import com.intellij.openapi.util.registry.Registry;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.patterns.PatternCondition;
 import com.intellij.patterns.PatternConditionPlus;
 import com.intellij.patterns.PlatformPatterns;
 import com.intellij.util.ProcessingContext;
+import com.intellij.util.Processor;
 import com.ixigua.completion.assets.Asset;
 import com.ixigua.completion.assets.AssetFinder;
+import com.ixigua.completion.assets.AssetKind;
+import com.ixigua.completion.diagnostics.CompletionTimings;
+import com.ixigua.completion.icon.IconDecorator;
 import com.ixigua.completion.pubspec.PubspecUtil;
 import com.ixigua.completion.svg.SVGActivator;
 import com.jetbrains.lang.dart.DartTokenTypes;
 import org.jetbrains.annotations.NotNull;
 
 import javax.swing.*;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
 
 import static com.intellij.codeInsight.completion.CompletionUtilCore.DUMMY_IDENTIFIER;
 
-public class AssetLiteralCompletionContributor extends CompletionContributor {
+// Dumb aware: completion only needs the PSI of the edited file, the VFS and the AssetIndex, none of which depend on the
+// IDE's indexes, so assets can still be completed while the project is being indexed, e.g. after switching branches.
+public class AssetLiteralCompletionContributor extends CompletionContributor implements DumbAware {
 
     private static final Logger LOG = Logger.getInstance(AssetLiteralCompletionContributor.class);
+    private static final String DEFERRED_ICONS_KEY = "flutter.asset.completion.deferred.icons";
 
     public AssetLiteralCompletionContributor() {
         SVGActivator svgActivator = new SVGActivator();
@@ -36,71 +45,88 @@ public class AssetLiteralCompletionContributor extends CompletionContributor {
            @Override
            protected void addCompletions(@NotNull CompletionParameters parameters, @NotNull ProcessingContext context, @NotNull CompletionResultSet result) {
                ProgressManager.checkCanceled();
+               long start = CompletionTimings.start();
+               try {
+                   addCompletions(parameters, result, start);
+               } finally {
+                   CompletionTimings.record(CompletionTimings.Stage.COMPLETION, start);
+               }
+           }
+
+           private void addCompletions(@NotNull CompletionParameters parameters, @NotNull CompletionResultSet result, long start) {
+               // Most strings are no asset at all, only search the assets that can be used where the string is
+               AssetKind kind = StringLiteralClassifier.classify(parameters.getPosition());
+               if (kind == AssetKind.NONE) {
+                   return;
+               }
                int caretPosition =  parameters.getPosition().getText().indexOf(DUMMY_IDENTIFIER);
                String prefix = parameters.getPosition().getText().substring(0, caretPosition);
-               LOG.info("asset literal prefix string " + prefix);
+               if (LOG.isDebugEnabled()) {
+                   LOG.debug("asset literal prefix string " + prefix);
+               }
                // Find the pubspec file
                VirtualFile pubspec =  PubspecUtil.findPubspecYamlFile(parameters.getPosition().getProject(), parameters.getOriginalFile().getVirtualFile());
-               CompletionContext completionContext = new CompletionContext(pubspec, prefix);
+               CompletionContext completionContext = new CompletionContext(parameters.getPosition().getProject(), pubspec, prefix);
                String packageName = completionContext.getPackageName();
-//               Find all assets that match this prefix
-               List<Asset> assets = assetsForPrefix(completionContext);
+               CompletionTimings.record(CompletionTimings.Stage.CONTEXT, start);
 //               We need to create a CompletionResultSet with the new PrefixMatcher, because the default PrefixMatcher
 //               may be different from what we want to handle.
-               result = result.withPrefixMatcher(createPrefixMatcher(prefix)).caseInsensitive();
-               for (Asset asset : assets) {
+               CompletionResultSet resultSet = result.withPrefixMatcher(createPrefixMatcher(prefix)).caseInsensitive();
+//               Find all assets that match this prefix, each of them is shown as soon as its package has been looked up
+               addAssetsForPrefix(completionContext, kind, asset -> {
                    ProgressManager.checkCanceled();
-                   LookupElementBuilder elementBuilder = LookupElementBuilder.create(asset.lookupStringForPackage(packageName));
-                   Icon icon = asset.icon();
-                   if (icon != null) {
-                       elementBuilder = elementBuilder.withIcon(icon);
-                   }
-                   String typeStr = asset.typeText();
-                   if (typeStr != null) {
-                       elementBuilder = elementBuilder.withTypeText(typeStr);
-                   }
-                   result.addElement(elementBuilder);
-               }
-
+                   resultSet.addElement(createLookupElement(asset, packageName));
+                   return true;
+               });
            }
        });
     }
 
-    @NotNull
-    private static List<Asset> assetsForPrefix(@NotNull CompletionContext context) {
+    private static void addAssetsForPrefix(@NotNull CompletionContext context,
+                                           @NotNull AssetKind kind,
+                                           @NotNull Processor<Asset> processor) {
         String prefix = context.getPrefix();
         if (prefix.isEmpty()) {
             LOG.error("dart string is empty");
-            return Collections.emptyList();
-        }
-        List<Asset> assets = AssetFinder.findAllAsset(context);
-        List<Asset> filteredAssets = filterAssets(assets, context);
-        if (filteredAssets == null) {
-            LOG.error("filtered path list is null");
-            return Collections.emptyList();
+            return;
         }
-        if (filteredAssets.isEmpty()) {
+        int[] count = new int[1];
+        AssetFinder.processAllAsset(context, kind, asset -> {
+            count[0]++;
+            return processor.process(asset);
+        });
+        if (count[0] == 0) {
             LOG.error("filtered path list is empty");
-            return Collections.emptyList();
         }
+    }
 
-        return filteredAssets;
+    @NotNull
+    private static LookupElementBuilder createLookupElement(@NotNull Asset asset, @NotNull String packageName) {
+        LookupElementBuilder elementBuilder = LookupElementBuilder.create(asset.lookupStringForPackage(packageName));
+        Icon icon = Registry.is(DEFERRED_ICONS_KEY, true) ? asset.iconIfCached() : asset.icon();
+        if (icon != null) {
+            elementBuilder = elementBuilder.withIcon(icon);
+        } else {
+            // Decoding the image may take a while, show the element with a blank icon first and let the lookup
+            // render the real icon on its background thread
+            elementBuilder = elementBuilder.withIcon(IconDecorator.blankIcon()).withExpensiveRenderer(new LookupElementRenderer<LookupElement>() {
+                @Override
+                public void renderElement(LookupElement element, LookupElementPresentation presentation) {
+                    Icon renderedIcon = asset.icon();
+                    if (renderedIcon != null) {
+                        presentation.setIcon(renderedIcon);
+                    }
+                }
+            });
+        }
+        String typeStr = asset.typeText();
+        if (typeStr != null) {
+            elementBuilder = elementBuilder.withTypeText(typeStr);
+        }
+        return elementBuilder;
     }
 
     private static PrefixMatcher createPrefixMatcher(@NotNull String prefix) {
         return new PlainPrefixMatcher(prefix, false);
     }
-
-    private static  List<Asset> filterAssets(@NotNull List<Asset> paths, @NotNull CompletionContext context) {
-        if (paths.isEmpty()) {
-            return null;
-        }
-        PrefixMatcher matcher = createPrefixMatcher(context.getPrefix());
-        List<Asset> ret = new ArrayList<>(paths);
-        ret.removeIf(s -> {
-            ProgressManager.checkCanceled();
-            return !matcher.prefixMatches(s.lookupStringForPackage(context.getPackageName()));
-        });
-        return ret;
-    }
 }
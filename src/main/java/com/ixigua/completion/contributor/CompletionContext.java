@@ -1,18 +1,24 @@
 package com.ixigua.completion.contributor;
 
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.util.containers.ContainerUtil;
+import com.ixigua.completion.index.PubspecDeclarationsIndex;
 import com.ixigua.completion.pubspec.PubspecUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
 
 // Every time the user triggers completion, we will create a context, which contains some information of the current
 // project to avoid calculating this information multiple times
 public class CompletionContext {
 
+    // The project in which completion was triggered
+    private Project project;
     // The pubspec file of the project to which the file the user is editing belongs
     private VirtualFile pubspec;
     // This is the string we need to complete
@@ -23,12 +29,20 @@ public class CompletionContext {
     private Map<String, Object> pubspecInfo;
     // completion context of all packages that the current project depends on
     private Map<String, CompletionContext> children;
+    // Packages getChild could not find, so they are looked up once per completion
+    private final Set<String> missingChildren = new HashSet<>();
 
-    public CompletionContext(@NotNull VirtualFile pubspec, @NotNull String prefix) {
+    public CompletionContext(@NotNull Project project, @NotNull VirtualFile pubspec, @NotNull String prefix) {
+        this.project = project;
         this.pubspec = pubspec;
         this.prefix = prefix;
     }
 
+    @NotNull
+    public Project getProject() {
+        return project;
+    }
+
     @NotNull
     public VirtualFile getPubspec() {
         return pubspec;
@@ -61,12 +75,12 @@ public class CompletionContext {
     @NotNull
     public Map<String, CompletionContext> getChildren() {
         if (children == null) {
-            children = new HashMap<>();
+            children = new LinkedHashMap<>();
             PubspecUtil.findAllDependentPubspecFiles(pubspec).forEach((s, virtualFile) -> {
                 if (virtualFile == null) {
                     return;
                 }
-                children.put(s, new CompletionContext(virtualFile, getPrefix()));
+                children.put(s, new CompletionContext(project, virtualFile, getPrefix()));
             });
         }
         return children;
@@ -74,7 +88,38 @@ public class CompletionContext {
 
     @Nullable
     public CompletionContext getChild(String packageName) {
-        return getChildren().get(packageName);
+        CompletionContext child = getChildren().get(packageName);
+        if (child != null || missingChildren.contains(packageName)) {
+            return child;
+        }
+        // The package config may not list a local package yet, e.g. before "pub get" ran after adding it
+        VirtualFile childPubspec = findLocalPubspec(packageName);
+        if (childPubspec == null) {
+            missingChildren.add(packageName);
+            return null;
+        }
+        child = new CompletionContext(project, childPubspec, getPrefix());
+        children.put(packageName, child);
+        return child;
+    }
+
+    // Finds the pubspec of the project package named 'packageName'. Several pubspecs may share a name, e.g. an
+    // "example/" app or a vendored copy, so we prefer the one in the content root of this package, and give up
+    // rather than pick one of several at random.
+    @Nullable
+    private VirtualFile findLocalPubspec(@NotNull String packageName) {
+        Collection<VirtualFile> pubspecs = PubspecDeclarationsIndex.findPubspecs(project, packageName,
+                GlobalSearchScope.projectScope(project));
+        if (pubspecs.size() <= 1) {
+            return ContainerUtil.getFirstItem(pubspecs);
+        }
+        VirtualFile contentRoot = ProjectFileIndex.getInstance(project).getContentRootForFile(pubspec);
+        if (contentRoot == null) {
+            return null;
+        }
+        List<VirtualFile> inContentRoot = ContainerUtil.filter(pubspecs,
+                candidate -> VfsUtilCore.isAncestor(contentRoot, candidate, false));
+        return inContentRoot.size() == 1 ? inContentRoot.get(0) : null;
     }
 
 }
@@ -0,0 +1,109 @@
+package com.ixigua.completion.contributor;
+
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.ixigua.completion.assets.AssetKind;
+import com.jetbrains.lang.dart.psi.*;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+// Decides which kind of assets the string literal being completed can refer to, from where it is used, so that
+// strings which are obviously no asset do not trigger a search at all.
+class StringLiteralClassifier {
+
+    // Named arguments whose value is a font family, e.g. TextStyle(fontFamily: "...")
+    private static final Set<String> FONT_ARGUMENTS = new HashSet<>(Arrays.asList("fontFamily", "fontFamilyFallback"));
+    // Functions and constructors whose first positional argument is an asset file
+    private static final Set<String> FILE_CALLEES = new HashSet<>(Arrays.asList(
+            "Image.asset",
+            "AssetImage",
+            "ExactAssetImage",
+            "SvgPicture.asset",
+            "Lottie.asset",
+            "FlareActor",
+            "RiveAnimation.asset",
+            "VideoPlayerController.asset",
+            "rootBundle.load",
+            "rootBundle.loadString",
+            "rootBundle.loadStructuredData",
+            "rootBundle.loadBuffer"
+    ));
+    // Functions whose arguments are messages
+    private static final Set<String> MESSAGE_CALLEES = new HashSet<>(Arrays.asList("print", "debugPrint", "log", "developer.log"));
+
+    @NotNull
+    static AssetKind classify(@NotNull PsiElement position) {
+        DartStringLiteralExpression literal = PsiTreeUtil.getParentOfType(position, DartStringLiteralExpression.class);
+        if (literal == null) {
+            return AssetKind.ANY;
+        }
+        PsiElement previous = PsiTreeUtil.prevVisibleLeaf(literal);
+        PsiElement next = PsiTreeUtil.nextVisibleLeaf(literal);
+        String previousText = previous != null ? previous.getText() : "";
+        String nextText = next != null ? next.getText() : "";
+        // A map key: {"key": value, "other": value}
+        if (":".equals(nextText) && ("{".equals(previousText) || ",".equals(previousText))) {
+            return AssetKind.NONE;
+        }
+        // A key in an index expression: json["key"]
+        if ("[".equals(previousText) && !(previous.getParent() instanceof DartListLiteralExpression)) {
+            return AssetKind.NONE;
+        }
+
+        // Elements of a list argument belong to the argument, e.g. fontFamilyFallback: ["..."]
+        PsiElement argument = literal;
+        while (argument.getParent() instanceof DartElement || argument.getParent() instanceof DartListLiteralExpression) {
+            argument = argument.getParent();
+        }
+        PsiElement parent = argument.getParent();
+        boolean named = parent instanceof DartNamedArgument;
+        if (named) {
+            String name = StringUtil.notNullize(StringUtil.substringBefore(parent.getText(), ":")).trim();
+            if (FONT_ARGUMENTS.contains(name)) {
+                return AssetKind.FONT;
+            }
+            argument = parent;
+            parent = parent.getParent();
+        }
+        if (!(parent instanceof DartArgumentList) || !(parent.getParent() instanceof DartArguments)) {
+            return AssetKind.ANY;
+        }
+        String callee = calleeText((DartArguments) parent.getParent());
+        if (MESSAGE_CALLEES.contains(callee)) {
+            return AssetKind.NONE;
+        }
+        if (FILE_CALLEES.contains(callee)) {
+            // Only the first positional argument is the asset, the others are e.g. a semanticLabel or a package name
+            boolean firstArgument = PsiTreeUtil.skipWhitespacesAndCommentsBackward(argument) == null;
+            return !named && argument == literal && firstArgument ? AssetKind.FILE : AssetKind.NONE;
+        }
+        return AssetKind.ANY;
+    }
+
+    // The called function or constructor without white space and keywords, e.g. "Image.asset" for
+    // "const Image.asset(...)"
+    @NotNull
+    private static String calleeText(@NotNull DartArguments arguments) {
+        PsiElement call = arguments.getParent();
+        if (call == null) {
+            return "";
+        }
+        // Only the text before the arguments is copied, the arguments may be a whole widget tree
+        int start = call.getTextRange().getStartOffset();
+        CharSequence contents = call.getContainingFile().getViewProvider().getContents();
+        String text = contents.subSequence(start, start + arguments.getStartOffsetInParent()).toString();
+        StringBuilder sb = new StringBuilder(text.length());
+        for (String part : text.trim().split("\\s+")) {
+            if (!part.equals("new") && !part.equals("const")) {
+                sb.append(part);
+            }
+        }
+        // Drop type arguments, e.g. Image.asset<T>
+        int typeArguments = sb.indexOf("<");
+        return typeArguments >= 0 ? sb.substring(0, typeArguments) : sb.toString();
+    }
+}
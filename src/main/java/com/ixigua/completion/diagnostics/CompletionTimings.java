@@ -0,0 +1,144 @@
+package com.ixigua.completion.diagnostics;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Collects how long each stage of asset completion takes, as histograms shown by ShowCompletionTimingsAction.
+// Recording a sample is a few atomic increments, so the stages are always measured, also in production.
+//
+// Usage:
+//   long start = CompletionTimings.start();
+//   ...
+//   CompletionTimings.record(CompletionTimings.Stage.FOLDER_WALK, start);
+public class CompletionTimings {
+
+    public enum Stage {
+        // The whole of AssetLiteralCompletionContributor.addCompletions
+        COMPLETION("completion"),
+        // Classifying the string literal and creating the completion context
+        CONTEXT("context creation"),
+        // Reading the package config of a package to find its dependencies
+        DEPENDENCIES("dependency resolution"),
+        // Parsing a pubspec, only counted when it is not cached
+        PUBSPEC_PARSE("pubspec parse"),
+        // Expanding the declarations of one package, mostly walking its declared folders
+        FOLDER_WALK("folder walk"),
+        // Looking up the assets matching the prefix in one package, including building its lookup index
+        FILTERING("filtering"),
+        // Decoding one icon which was not cached
+        ICON_RENDERING("icon rendering");
+
+        private final String description;
+        private final Histogram histogram = new Histogram();
+
+        Stage(@NotNull String description) {
+            this.description = description;
+        }
+
+        @NotNull
+        public String getDescription() {
+            return description;
+        }
+
+        @NotNull
+        public Histogram getHistogram() {
+            return histogram;
+        }
+    }
+
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    // Records the time since 'start', which was returned by start()
+    public static void record(@NotNull Stage stage, long start) {
+        stage.histogram.add(System.nanoTime() - start);
+    }
+
+    public static void reset() {
+        for (Stage stage : Stage.values()) {
+            stage.histogram.reset();
+        }
+    }
+
+    // Formats all stages as a table, one line per stage
+    @NotNull
+    public static String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "%-22s %8s %10s %10s %10s %10s%n", "stage", "count", "mean ms", "p50 ms", "p90 ms", "max ms"));
+        for (Stage stage : Stage.values()) {
+            Histogram histogram = stage.histogram;
+            sb.append(String.format(Locale.ROOT, "%-22s %8d %10.2f %10.2f %10.2f %10.2f%n",
+                    stage.description,
+                    histogram.getCount(),
+                    histogram.getMeanMillis(),
+                    histogram.getPercentileMillis(0.5),
+                    histogram.getPercentileMillis(0.9),
+                    histogram.getMaxMillis()));
+        }
+        sb.append(String.format(Locale.ROOT, "%nPercentiles are upper bounds of power-of-two buckets.%n"));
+        return sb.toString();
+    }
+
+    // Counts durations in buckets of powers of two nanoseconds, bucket i holds durations in [2^(i-1), 2^i)
+    public static class Histogram {
+        private static final int BUCKETS = 64;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        void add(long nanos) {
+            if (nanos < 0) {
+                nanos = 0;
+            }
+            buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(nanos));
+            count.incrementAndGet();
+            sum.addAndGet(nanos);
+            max.accumulateAndGet(nanos, Math::max);
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0);
+            }
+            count.set(0);
+            sum.set(0);
+            max.set(0);
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public double getMeanMillis() {
+            long n = count.get();
+            return n == 0 ? 0 : sum.get() / 1e6 / n;
+        }
+
+        public double getMaxMillis() {
+            return max.get() / 1e6;
+        }
+
+        // The upper bound of the bucket containing the 'fraction' percentile, e.g. 0.9 for p90
+        public double getPercentileMillis(double fraction) {
+            long n = count.get();
+            if (n == 0) {
+                return 0;
+            }
+            long target = (long) Math.ceil(n * fraction);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= target) {
+                    return Math.min(i == 0 ? 0 : Math.pow(2, i) / 1e6, getMaxMillis());
+                }
+            }
+            return getMaxMillis();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.ixigua.completion.diagnostics;
+
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.project.DumbAware;
+import com.intellij.openapi.ui.DialogWrapper;
+import com.intellij.ui.components.JBScrollPane;
+import com.intellij.ui.components.JBTextArea;
+import com.intellij.util.ui.JBUI;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+
+// An internal action showing where asset completion spends its time, see CompletionTimings
+public class ShowCompletionTimingsAction extends AnAction implements DumbAware {
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        new TimingsDialog().show();
+    }
+
+    private static class TimingsDialog extends DialogWrapper {
+        private final JBTextArea textArea = new JBTextArea();
+
+        TimingsDialog() {
+            super(false);
+            setTitle("Flutter Asset Completion Timings");
+            setOKButtonText("Close");
+            textArea.setEditable(false);
+            textArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, textArea.getFont().getSize()));
+            refresh();
+            init();
+        }
+
+        private void refresh() {
+            textArea.setText(CompletionTimings.report());
+        }
+
+        @Nullable
+        @Override
+        protected JComponent createCenterPanel() {
+            JBScrollPane scrollPane = new JBScrollPane(textArea);
+            scrollPane.setPreferredSize(JBUI.size(640, 240));
+            return scrollPane;
+        }
+
+        @NotNull
+        @Override
+        protected Action[] createLeftSideActions() {
+            return new Action[]{
+                    new AbstractAction("Refresh") {
+                        @Override
+                        public void actionPerformed(ActionEvent e) {
+                            refresh();
+                        }
+                    },
+                    new AbstractAction("Reset") {
+                        @Override
+                        public void actionPerformed(ActionEvent e) {
+                            CompletionTimings.reset();
+                            refresh();
+                        }
+                    }
+            };
+        }
+
+        @NotNull
+        @Override
+        protected Action[] createActions() {
+            return new Action[]{getOKAction()};
+        }
+    }
+}
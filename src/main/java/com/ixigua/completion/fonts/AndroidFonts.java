@@ -1,12 +0,0 @@
-package com.ixigua.completion.fonts;
-
-public class AndroidFonts {
-    public final static String[] FONT_LIST = new String[] {
-            "sans-serif",
-            "sans-serif-light",
-            "sans-serif-thin",
-            "sans-serif-condensed",
-            "serif",
-            "Droid Sans",
-    };
-}
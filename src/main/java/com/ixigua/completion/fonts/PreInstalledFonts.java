@@ -0,0 +1,108 @@
+package com.ixigua.completion.fonts;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.util.registry.Registry;
+import com.intellij.openapi.util.text.StringUtil;
+import com.ixigua.completion.assets.Asset;
+import com.ixigua.completion.assets.FontAsset;
+import com.ixigua.completion.index.AssetLookupIndex;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// The catalog of fonts pre-installed on iOS, Android and the other platforms Flutter runs on, see
+// preinstalled_fonts.txt. The catalog is read once, and the fonts of the enabled platforms are kept in one lookup
+// index shared by all projects, since pre-installed fonts look the same from every package.
+public class PreInstalledFonts {
+
+    private static final Logger LOG = Logger.getInstance(PreInstalledFonts.class);
+    // Comma separated platforms whose fonts are offered, e.g. "ios,android,web"
+    private static final String PLATFORMS_KEY = "flutter.asset.completion.font.platforms";
+
+    // The enabled platforms and the index of their fonts, rebuilt when the registry value changes
+    private static volatile Pair<String, AssetLookupIndex> INDEX;
+
+    @NotNull
+    public static AssetLookupIndex getLookupIndex() {
+        String platforms = Registry.stringValue(PLATFORMS_KEY);
+        Pair<String, AssetLookupIndex> index = INDEX;
+        if (index == null || !index.first.equals(platforms)) {
+            index = Pair.create(platforms, new AssetLookupIndex(getFonts(platforms)));
+            INDEX = index;
+        }
+        return index.second;
+    }
+
+    // Returns the fonts of 'platforms' in catalog order, every font family once
+    @NotNull
+    static List<Asset> getFonts(@NotNull String platforms) {
+        Set<String> enabled = new HashSet<>();
+        for (String platform : StringUtil.split(platforms, ",")) {
+            enabled.add(platform.trim().toLowerCase(Locale.ROOT));
+        }
+        Set<String> names = new HashSet<>();
+        List<Asset> ret = new ArrayList<>();
+        for (Section section : Catalog.SECTIONS) {
+            if (!enabled.contains(section.platform)) {
+                continue;
+            }
+            for (String name : section.fonts) {
+                if (names.add(name)) {
+                    ret.add(new FontAsset(name, section.description));
+                }
+            }
+        }
+        return ret;
+    }
+
+    private static class Section {
+        final String platform;
+        final String description;
+        final List<String> fonts = new ArrayList<>();
+
+        Section(@NotNull String platform, @NotNull String description) {
+            this.platform = platform;
+            this.description = description;
+        }
+    }
+
+    // Loads the catalog on first use
+    private static class Catalog {
+        static final List<Section> SECTIONS = load();
+
+        @NotNull
+        private static List<Section> load() {
+            List<Section> sections = new ArrayList<>();
+            InputStream stream = PreInstalledFonts.class.getResourceAsStream("preinstalled_fonts.txt");
+            if (stream == null) {
+                LOG.error("preinstalled_fonts.txt is missing");
+                return sections;
+            }
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (line.isEmpty() || line.startsWith("#")) {
+                        continue;
+                    }
+                    int end = line.indexOf(']');
+                    if (line.startsWith("[") && end > 0) {
+                        String platform = line.substring(1, end).trim().toLowerCase(Locale.ROOT);
+                        sections.add(new Section(platform, line.substring(end + 1).trim()));
+                    } else if (!sections.isEmpty()) {
+                        sections.get(sections.size() - 1).fonts.add(line);
+                    }
+                }
+            } catch (IOException e) {
+                LOG.error("read preinstalled_fonts.txt failed", e);
+            }
+            return sections;
+        }
+    }
+}
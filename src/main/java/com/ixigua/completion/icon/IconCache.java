@@ -0,0 +1,139 @@
+package com.ixigua.completion.icon;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+// A thread-safe LRU cache of icons keyed by file path.
+// It holds at most 'maxEntries' icons using at most 'maxBytes' bytes of pixels strongly. The least recently used
+// icons beyond these limits are kept through soft references, so they can still be reused until the GC needs memory.
+class IconCache {
+
+    private final int maxEntries;
+    private final long maxBytes;
+
+    // guarded by 'this', iterates from the least recently used entry to the most recently used one
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // guarded by 'this'
+    private final Map<String, KeyedSoftReference> evicted = new LinkedHashMap<>();
+    private final ReferenceQueue<Icon> clearedReferences = new ReferenceQueue<>();
+    // guarded by 'this'
+    private long bytes;
+
+    IconCache(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    @Nullable
+    synchronized Icon get(@NotNull String key) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            return entry.icon;
+        }
+        purgeClearedReferences();
+        KeyedSoftReference reference = evicted.remove(key);
+        Icon icon = reference != null ? reference.get() : null;
+        if (icon != null) {
+            put(key, icon, reference.bytes);
+        }
+        return icon;
+    }
+
+    synchronized void put(@NotNull String key, @NotNull Icon icon, long iconBytes) {
+        purgeClearedReferences();
+        evicted.remove(key);
+        Entry previous = entries.put(key, new Entry(icon, iconBytes));
+        if (previous != null) {
+            bytes -= previous.bytes;
+        }
+        bytes += iconBytes;
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && iterator.hasNext()) {
+            Map.Entry<String, Entry> eldest = iterator.next();
+            iterator.remove();
+            bytes -= eldest.getValue().bytes;
+            evicted.put(eldest.getKey(), new KeyedSoftReference(eldest.getKey(), eldest.getValue(), clearedReferences));
+        }
+    }
+
+    // Drops the icons of the files at 'paths' and of all files below them.
+    // Each key is checked once by looking its ancestors up in 'paths', so a batch costs one pass over the cache.
+    synchronized void invalidate(@NotNull Set<String> paths) {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Entry> entry = iterator.next();
+            if (isInvalidated(entry.getKey(), paths)) {
+                iterator.remove();
+                bytes -= entry.getValue().bytes;
+            }
+        }
+        evicted.keySet().removeIf(key -> isInvalidated(key, paths));
+    }
+
+    // Turns all strong references into soft ones, called when the IDE is running low on memory
+    synchronized void demoteAll() {
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            evicted.put(entry.getKey(), new KeyedSoftReference(entry.getKey(), entry.getValue(), clearedReferences));
+        }
+        entries.clear();
+        bytes = 0;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized long bytes() {
+        return bytes;
+    }
+
+    // guarded by 'this'
+    private void purgeClearedReferences() {
+        KeyedSoftReference reference;
+        while ((reference = (KeyedSoftReference) clearedReferences.poll()) != null) {
+            evicted.remove(reference.key, reference);
+        }
+    }
+
+    // Whether 'path' or one of its ancestors is in 'paths'
+    private static boolean isInvalidated(@NotNull String path, @NotNull Set<String> paths) {
+        if (paths.contains(path)) {
+            return true;
+        }
+        for (int end = path.lastIndexOf('/'); end > 0; end = path.lastIndexOf('/', end - 1)) {
+            if (paths.contains(path.substring(0, end))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class Entry {
+        final Icon icon;
+        final long bytes;
+
+        Entry(@NotNull Icon icon, long bytes) {
+            this.icon = icon;
+            this.bytes = bytes;
+        }
+    }
+
+    private static class KeyedSoftReference extends SoftReference<Icon> {
+        final String key;
+        final long bytes;
+
+        KeyedSoftReference(@NotNull String key, @NotNull Entry entry, @NotNull ReferenceQueue<Icon> queue) {
+            super(entry.icon, queue);
+            this.key = key;
+            this.bytes = entry.bytes;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.ixigua.completion.icon;
+
+import com.intellij.openapi.util.io.FileUtilRt;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+// Drops cached icons when their files change, so an edited image gets a new icon instead of leaking the old one.
+// The paths of a whole batch of events are invalidated at once, the listener runs inside the write action.
+public class IconCacheInvalidator implements BulkFileListener {
+
+    // The formats Flutter decodes plus SVG, icons of other files are never cached
+    private static final Set<String> IMAGE_EXTENSIONS = new HashSet<>(Arrays.asList(
+            "png", "jpg", "jpeg", "gif", "webp", "bmp", "wbmp", "svg"));
+
+    @Override
+    public void before(@NotNull List<? extends VFileEvent> events) {
+        Set<String> paths = new HashSet<>();
+        for (VFileEvent event : events) {
+            if (!mayHaveIcons(event.getFile())) {
+                continue;
+            }
+            if (event instanceof VFileDeleteEvent) {
+                paths.add(event.getPath());
+            } else if (event instanceof VFileMoveEvent) {
+                paths.add(((VFileMoveEvent) event).getOldPath());
+            } else if (event instanceof VFilePropertyChangeEvent && ((VFilePropertyChangeEvent) event).isRename()) {
+                paths.add(((VFilePropertyChangeEvent) event).getOldPath());
+            }
+        }
+        if (!paths.isEmpty()) {
+            IconDecorator.invalidate(paths);
+        }
+    }
+
+    @Override
+    public void after(@NotNull List<? extends VFileEvent> events) {
+        Set<String> paths = new HashSet<>();
+        for (VFileEvent event : events) {
+            if (event instanceof VFileContentChangeEvent && mayHaveIcons(event.getFile())) {
+                paths.add(event.getPath());
+            }
+        }
+        if (!paths.isEmpty()) {
+            IconDecorator.invalidate(paths);
+        }
+    }
+
+    // A folder may hold images, any other file only has a cached icon if it is an image
+    private static boolean mayHaveIcons(@Nullable VirtualFile file) {
+        if (file == null || file.isDirectory()) {
+            return true;
+        }
+        String extension = FileUtilRt.getExtension(file.getName());
+        return IMAGE_EXTENSIONS.contains(extension.toLowerCase(Locale.ROOT));
+    }
+}
@@ -3,6 +3,10 @@ package com.ixigua.completion.icon;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.IconUtil;
+import com.intellij.util.LowMemoryWatcher;
+import com.intellij.util.ui.ImageUtil;
+import com.ixigua.completion.diagnostics.CompletionTimings;
+import com.ixigua.completion.transform.ThumbnailReader;
 import com.ixigua.completion.transform.TransformImage;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -13,34 +17,71 @@ import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Set;
 
 public class IconDecorator {
 
     private static final int ICON_WIDTH = 32;
     private static final int ICON_HEIGHT = 32;
+    // Every icon is a 32x32 ARGB image, so 4096 icons take about 16MB
+    private static final int MAX_CACHED_ICONS = 4096;
+    private static final long MAX_CACHED_ICON_BYTES = 16L * 1024 * 1024;
     private static final Logger LOG = Logger.getInstance(IconDecorator.class);
 
     //In order to prevent the default icon and user icon from using the same cache key, the default icon is not placed
     // in ICON_CACHE
     private static Icon DEFAULT_FONT_ICON = null;
     private static Icon BLANK_ICON = null;
-    private static Map<String, Icon> ICON_CACHE = new HashMap<>();
+    // Icons are keyed by file path, IconCacheInvalidator drops them when their files change.
+    // They are created both on the completion thread and on the thread rendering the deferred icons.
+    private static final IconCache ICON_CACHE = new IconCache(MAX_CACHED_ICONS, MAX_CACHED_ICON_BYTES);
+    // The watcher only references its runnable weakly, so it has to be kept alive here
+    private static final LowMemoryWatcher LOW_MEMORY_WATCHER = LowMemoryWatcher.register(ICON_CACHE::demoteAll);
 
     @Nullable
-    public static Icon get(@Nullable VirtualFile file, @Nullable String cacheKey) {
+    public static Icon getCached(@NotNull VirtualFile file) {
+        return ICON_CACHE.get(file.getPath());
+    }
+
+    @Nullable
+    public static Icon get(@Nullable VirtualFile file) {
+        String cacheKey = file != null ? file.getPath() : null;
         Icon icon = cacheKey != null ? ICON_CACHE.get(cacheKey) : null;
         if (icon != null) {
-            LOG.info("icon cache hit, key: " + cacheKey);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("icon cache hit, key: " + cacheKey);
+            }
             return icon;
         }
         if (file == null) {
             return blankIcon();
         }
+        long start = CompletionTimings.start();
+        try {
+            return render(file, cacheKey);
+        } finally {
+            CompletionTimings.record(CompletionTimings.Stage.ICON_RENDERING, start);
+        }
+    }
+
+    // Creates the icon of 'file' which is not in the memory cache, from its stored thumbnail or by decoding the file
+    @Nullable
+    private static Icon render(@NotNull VirtualFile file, @NotNull String cacheKey) {
+        Icon icon;
+        // The thumbnail may have been created in a previous IDE session
+        ThumbnailStore thumbnailStore = ThumbnailStore.getInstance();
+        BufferedImage thumbnail = thumbnailStore.read(file);
+        if (thumbnail != null) {
+            icon = createFromThumbnail(thumbnail, cacheKey);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("created an icon from stored thumbnail, key: " + cacheKey);
+            }
+            return icon;
+        }
         BufferedImage iconImage = null;
         try {
-            iconImage = ImageIO.read(new File(file.getPath()));
+            // Decode twice the icon size, so the icon stays sharp on HiDPI screens
+            iconImage = ThumbnailReader.read(new File(file.getPath()), ICON_WIDTH * 2, ICON_HEIGHT * 2);
         } catch (IOException e) {
             LOG.info("read icon failed, file: " + file + " exception: " + e);
         }
@@ -48,19 +89,50 @@ public class IconDecorator {
             return blankIcon();
         }
 
-        icon = create(iconImage, cacheKey);
-        LOG.info("created a new icon, key: " + cacheKey);
+        Image outputImage = resize(iconImage);
+        if (outputImage == null) {
+            return null;
+        }
+        thumbnailStore.write(file, outputImage);
+        icon = create(outputImage, cacheKey);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("created a new icon, key: " + cacheKey);
+        }
         return icon;
     }
 
     @Nullable
-    private static Icon create(@NotNull BufferedImage image, @Nullable String cacheKey) {
+    private static Image resize(@NotNull BufferedImage image) {
+        try {
+            return TransformImage.resizeAspectFitCenter(image, ICON_WIDTH, ICON_HEIGHT);
+        } catch (Exception e) {
+            LOG.error("resize icon failed " + e);
+            return null;
+        }
+    }
+
+    @Nullable
+    private static Icon createFromThumbnail(@NotNull BufferedImage thumbnail, @NotNull String cacheKey) {
+        if (thumbnail.getWidth() == ICON_WIDTH && thumbnail.getHeight() == ICON_HEIGHT) {
+            return create(thumbnail, cacheKey);
+        }
+        // The thumbnail holds the physical pixels of a HiDPI icon, draw them back into a HiDPI image of icon size
+        BufferedImage outputImage = ImageUtil.createImage(ICON_WIDTH, ICON_HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = outputImage.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(thumbnail, 0, 0, ICON_WIDTH, ICON_HEIGHT, null);
+        g.dispose();
+        return create(outputImage, cacheKey);
+    }
+
+    @Nullable
+    private static Icon create(@NotNull Image outputImage, @Nullable String cacheKey) {
         Icon icon = null;
         try {
-            Image outputImage = TransformImage.resizeAspectFitCenter(image, ICON_WIDTH, ICON_HEIGHT);
             icon = IconUtil.createImageIcon(outputImage);
             if (cacheKey != null) {
-                ICON_CACHE.put(cacheKey, icon);
+                ICON_CACHE.put(cacheKey, icon, 4L * outputImage.getWidth(null) * outputImage.getHeight(null));
             }
         } catch (Exception e) {
             LOG.error("create icon failed " + e);
@@ -68,6 +140,11 @@ public class IconDecorator {
         return icon;
     }
 
+    // Called when the files at 'paths' or any files below them have been modified, deleted, moved or renamed
+    static void invalidate(@NotNull Set<String> paths) {
+        ICON_CACHE.invalidate(paths);
+    }
+
     public static Icon defaultFontIcon() {
         if (DEFAULT_FONT_ICON != null) {
             return DEFAULT_FONT_ICON;
@@ -79,7 +156,7 @@ public class IconDecorator {
             LOG.error("read font icon failed " + e);
         }
         assert iconImage != null;
-        DEFAULT_FONT_ICON = create(iconImage, null);
+        DEFAULT_FONT_ICON = create(resize(iconImage), null);
         return DEFAULT_FONT_ICON;
     }
 
@@ -94,7 +171,7 @@ public class IconDecorator {
             LOG.error("read font icon failed " + e);
         }
         assert iconImage != null;
-        BLANK_ICON = create(iconImage, null);
+        BLANK_ICON = create(resize(iconImage), null);
         return BLANK_ICON;
     }
 }
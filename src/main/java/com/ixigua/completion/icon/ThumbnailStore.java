@@ -0,0 +1,177 @@
+package com.ixigua.completion.icon;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.ui.ImageUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Stores the thumbnails created by IconDecorator in the IDE system directory, so they survive IDE restarts.
+//
+// Every thumbnail is kept in its own file, named after a hash of the path, length and timestamp of the image, so a
+// modified image never matches an old thumbnail. The file format is:
+//   int magic, int version, int width, int height, followed by width * height ARGB pixels
+// all big-endian. Thumbnails are read directly into the pixels of an image, without going through ImageIO.
+class ThumbnailStore {
+
+    private static final Logger LOG = Logger.getInstance(ThumbnailStore.class);
+    private static final int MAGIC = 0x46414c54;
+    private static final int VERSION = 1;
+    private static final int HEADER_INTS = 4;
+    // Thumbnails that have not been used for this long are deleted when the store is opened
+    private static final long MAX_UNUSED_DAYS = 30;
+    // Reading a thumbnail marks it as used by updating its modification time, at most once in this period, so the
+    // icon rendering path does not write file metadata on every read. It is small compared to MAX_UNUSED_DAYS.
+    private static final long TOUCH_INTERVAL_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private static volatile ThumbnailStore INSTANCE;
+
+    private final Path directory;
+
+    ThumbnailStore(@NotNull Path directory) {
+        this.directory = directory;
+    }
+
+    @NotNull
+    static ThumbnailStore getInstance() {
+        ThumbnailStore store = INSTANCE;
+        if (store == null) {
+            synchronized (ThumbnailStore.class) {
+                store = INSTANCE;
+                if (store == null) {
+                    store = new ThumbnailStore(Paths.get(PathManager.getSystemPath(), "flutter_asset_completion", "thumbnails"));
+                    ThumbnailStore storeToPrune = store;
+                    ApplicationManager.getApplication().executeOnPooledThread(storeToPrune::pruneUnusedThumbnails);
+                    INSTANCE = store;
+                }
+            }
+        }
+        return store;
+    }
+
+    // Returns the stored thumbnail of 'file', or null if it has not been stored or the file has changed since
+    @Nullable
+    BufferedImage read(@NotNull VirtualFile file) {
+        Path path = thumbnailPath(file);
+        if (path == null) {
+            return null;
+        }
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null;
+        }
+        if (!attributes.isRegularFile() || attributes.size() < HEADER_INTS * 4) {
+            return null;
+        }
+        try {
+            // A thumbnail is a few KB, reading it to the heap is cheaper than mapping it. A mapping would also keep
+            // the file locked on Windows until the buffer is garbage collected, so it could not be pruned or replaced.
+            IntBuffer ints = ByteBuffer.wrap(Files.readAllBytes(path)).asIntBuffer();
+            if (ints.remaining() < HEADER_INTS) {
+                return null;
+            }
+            if (ints.get() != MAGIC || ints.get() != VERSION) {
+                return null;
+            }
+            int width = ints.get();
+            int height = ints.get();
+            if (width <= 0 || height <= 0 || (long) width * height != ints.remaining()) {
+                return null;
+            }
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            ints.get(((DataBufferInt) image.getRaster().getDataBuffer()).getData());
+            long now = System.currentTimeMillis();
+            if (now - attributes.lastModifiedTime().toMillis() > TOUCH_INTERVAL_MILLIS) {
+                Files.setLastModifiedTime(path, FileTime.fromMillis(now));
+            }
+            return image;
+        } catch (IOException | RuntimeException e) {
+            LOG.info("read thumbnail failed, file: " + file + " exception: " + e);
+            return null;
+        }
+    }
+
+    void write(@NotNull VirtualFile file, @NotNull Image thumbnail) {
+        Path path = thumbnailPath(file);
+        if (path == null) {
+            return;
+        }
+        // HiDPI thumbnails are stored with their physical pixels
+        BufferedImage image = ImageUtil.toBufferedImage(thumbnail);
+        int width = image.getWidth();
+        int height = image.getHeight();
+        ByteBuffer buffer = ByteBuffer.allocate((HEADER_INTS + width * height) * 4);
+        IntBuffer ints = buffer.asIntBuffer();
+        ints.put(MAGIC).put(VERSION).put(width).put(height);
+        ints.put(image.getRGB(0, 0, width, height, null, 0, width));
+        try {
+            Files.createDirectories(directory);
+            // Write to a temporary file first, so a concurrent reader never sees a partially written thumbnail
+            Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.info("write thumbnail failed, file: " + file + " exception: " + e);
+        }
+    }
+
+    @Nullable
+    private Path thumbnailPath(@NotNull VirtualFile file) {
+        String key = file.getPath() + '\0' + file.getLength() + '\0' + file.getTimeStamp();
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return directory.resolve(name.append(".thumb").toString());
+        } catch (NoSuchAlgorithmException e) {
+            LOG.error("SHA-1 is not available " + e);
+            return null;
+        }
+    }
+
+    private void pruneUnusedThumbnails() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        long threshold = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(MAX_UNUSED_DAYS);
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(path -> {
+                try {
+                    if (Files.getLastModifiedTime(path).toMillis() < threshold) {
+                        Files.deleteIfExists(path);
+                    }
+                } catch (IOException e) {
+                    LOG.info("delete thumbnail failed, path: " + path + " exception: " + e);
+                }
+            });
+        } catch (IOException e) {
+            LOG.info("prune thumbnails failed " + e);
+        }
+    }
+}
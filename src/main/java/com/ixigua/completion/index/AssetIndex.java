@@ -0,0 +1,254 @@
+package com.ixigua.completion.index;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.util.ProgressIndicatorUtils;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.registry.Registry;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.newvfs.events.*;
+import com.ixigua.completion.assets.AssetFinder;
+import com.ixigua.completion.assets.PackageAssets;
+import com.ixigua.completion.contributor.CompletionContext;
+import org.jetbrains.annotations.NotNull;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+// Keeps the expanded assets of every pubspec we have seen in memory, so completion becomes a lookup instead of
+// walking every declared folder again. The cache is kept up to date in two ways:
+// 1. editing a pubspec changes its modification stamp. On the next lookup the package is expanded again, unless its
+//    "assets" and "fonts" declarations are unchanged, in which case the snapshot is reused under the new stamp.
+// 2. creating, deleting, moving or renaming files under a declared folder patches the cached package in place
+//    (see AssetIndexListener), so large asset folders are never walked twice. Each batch of events patches a package
+//    at most once, and a package touched by a large batch is dropped and expanded again when it is needed.
+// While the IDE is indexing, e.g. after switching branches, packages are not expanded again: the last snapshot of an
+// edited pubspec is served until indexing is done, so completion stays fast while the disk is busy.
+public class AssetIndex {
+
+    private static final Logger LOG = Logger.getInstance(AssetIndex.class);
+    // The number of packages expanded at the same time, 0 means one per CPU core and 1 disables parallel expansion.
+    // Values above the number of CPU cores are capped by the size of SCANNER.
+    private static final String PARALLELISM_KEY = "flutter.asset.completion.scan.parallelism";
+
+    // VFS events are applied to a cached package in one copy per batch, but a batch touching more of its paths than
+    // this, e.g. a branch switch, drops the package instead: the write action stays short, and the next completion
+    // or warm-up expands the package again off the EDT with one walk of its folders.
+    private static final int MAX_PATCHED_PATHS = 32;
+
+    // The threads packages are expanded on, shared by all projects. Each call uses at most PARALLELISM_KEY of them.
+    private static final ExecutorService SCANNER = AppExecutorUtil.createBoundedApplicationPoolExecutor(
+            "Flutter Asset Scanner", Runtime.getRuntime().availableProcessors());
+
+    // Snapshots by pubspec path. Every package is expanded once, however many packages consume it.
+    private final Map<String, PackageAssets> packages = new ConcurrentHashMap<>();
+
+    @NotNull
+    public static AssetIndex getInstance(@NotNull Project project) {
+        return project.getService(AssetIndex.class);
+    }
+
+    @NotNull
+    public PackageAssets getPackageAssets(@NotNull CompletionContext context) {
+        VirtualFile pubspec = context.getPubspec();
+        PackageSnapshotKey key = PackageSnapshotKey.of(pubspec);
+        PackageAssets cached = packages.get(key.getPubspecPath());
+        if (cached != null && (cached.getKey().equals(key) || DumbService.isDumb(context.getProject()))) {
+            return cached;
+        }
+        PackageAssets snapshot = cached != null ? cached.reuseFor(context, key) : null;
+        if (snapshot == null) {
+            snapshot = AssetFinder.findAllMyAssets(context, key);
+        }
+        if (pubspec.isValid()) {
+            packages.put(key.getPubspecPath(), snapshot);
+        }
+        return snapshot;
+    }
+
+    // Expands the packages of 'contexts' which are not cached yet, on up to PARALLELISM_KEY pooled threads at a time.
+    // Must be called in a read action. The calling thread only waits for the workers, every worker runs in its own
+    // read action that gives way to write actions, so a pending write action never dead-locks with the caller.
+    // Packages the workers could not expand, e.g. because a write action interrupted them, are left to the caller.
+    public void expandInParallel(@NotNull Collection<CompletionContext> contexts) {
+        int parallelism = getParallelism();
+        List<CompletionContext> pending = new ArrayList<>();
+        for (CompletionContext context : contexts) {
+            PackageSnapshotKey key = PackageSnapshotKey.of(context.getPubspec());
+            PackageAssets cached = packages.get(key.getPubspecPath());
+            if (cached == null || (!cached.getKey().equals(key) && !DumbService.isDumb(context.getProject()))) {
+                pending.add(context);
+            }
+        }
+        if (parallelism <= 1 || pending.size() <= 1) {
+            return;
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("expand " + pending.size() + " packages on " + parallelism + " threads");
+        }
+        ProgressIndicator indicator = ProgressManager.getGlobalProgressIndicator();
+        // 'parallelism' workers share the pending packages, so this call never occupies more scanner threads
+        Queue<CompletionContext> queue = new ConcurrentLinkedQueue<>(pending);
+        int workers = Math.min(parallelism, pending.size());
+        List<Future<?>> futures = new ArrayList<>(workers);
+        try {
+            for (int i = 0; i < workers; i++) {
+                futures.add(SCANNER.submit(() -> {
+                    CompletionContext next;
+                    while ((next = queue.poll()) != null && (indicator == null || !indicator.isCanceled())) {
+                        CompletionContext context = next;
+                        try {
+                            ProgressIndicatorUtils.runInReadActionWithWriteActionPriority(() -> getPackageAssets(context), indicator);
+                        } catch (ProcessCanceledException ignored) {
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                ProgressIndicatorUtils.awaitWithCheckCanceled(future);
+            }
+        } finally {
+            // Workers that are still running stop after their current package
+            queue.clear();
+            for (Future<?> future : futures) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    // Expands the package of 'context' and every package it depends on, so the first completion in the package finds
+    // them all cached. Must be called in a read action. Returns the assets of the package itself.
+    @NotNull
+    public PackageAssets warmUp(@NotNull CompletionContext context) {
+        PackageAssets packageAssets = getPackageAssets(context);
+        List<CompletionContext> children = new ArrayList<>(context.getChildren().values());
+        children.removeIf(child -> child.getPubspec().equals(context.getPubspec()));
+        expandInParallel(children);
+        for (CompletionContext child : children) {
+            ProgressManager.checkCanceled();
+            getPackageAssets(child);
+        }
+        return packageAssets;
+    }
+
+    private static int getParallelism() {
+        int parallelism = Registry.intValue(PARALLELISM_KEY, 0);
+        return parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+    }
+
+    // Called before the events are applied, while the affected files still exist at their old locations
+    void beforeEvents(@NotNull List<? extends VFileEvent> events) {
+        List<String> removedPaths = new ArrayList<>();
+        for (VFileEvent event : events) {
+            if (event instanceof VFileDeleteEvent) {
+                removedPaths.add(event.getPath());
+            } else if (event instanceof VFileMoveEvent) {
+                removedPaths.add(((VFileMoveEvent) event).getOldPath());
+            } else if (event instanceof VFilePropertyChangeEvent && ((VFilePropertyChangeEvent) event).isRename()) {
+                removedPaths.add(((VFilePropertyChangeEvent) event).getOldPath());
+            }
+        }
+        if (!removedPaths.isEmpty()) {
+            removePaths(removedPaths);
+        }
+    }
+
+    // Called after the events are applied, when created and moved files can be found at their new locations
+    void afterEvents(@NotNull List<? extends VFileEvent> events) {
+        // Added paths and their files, the file is null if it cannot be found
+        Map<String, VirtualFile> addedFiles = new LinkedHashMap<>();
+        for (VFileEvent event : events) {
+            if (event instanceof VFileCreateEvent) {
+                addedFiles.put(event.getPath(), event.getFile());
+            } else if (event instanceof VFileCopyEvent) {
+                addedFiles.put(event.getPath(), ((VFileCopyEvent) event).findCreatedFile());
+            } else if (event instanceof VFileMoveEvent) {
+                addedFiles.put(((VFileMoveEvent) event).getNewPath(), event.getFile());
+            } else if (event instanceof VFilePropertyChangeEvent && ((VFilePropertyChangeEvent) event).isRename()) {
+                addedFiles.put(((VFilePropertyChangeEvent) event).getNewPath(), event.getFile());
+            } else if (event instanceof VFileContentChangeEvent) {
+                invalidate(event.getPath());
+            }
+        }
+        if (!addedFiles.isEmpty()) {
+            addFiles(addedFiles);
+        }
+    }
+
+    // Removes 'paths' from every cached package, copying each package at most once
+    private void removePaths(@NotNull List<String> paths) {
+        packages.forEach((pubspecPath, packageAssets) -> {
+            List<String> covered = new ArrayList<>();
+            for (String path : paths) {
+                if (packageAssets.isInvalidatedBy(path)) {
+                    drop(pubspecPath, packageAssets, path);
+                    return;
+                }
+                if (packageAssets.covers(path)) {
+                    covered.add(path);
+                }
+            }
+            if (covered.size() > MAX_PATCHED_PATHS) {
+                drop(pubspecPath, packageAssets, covered.size() + " removed paths");
+            } else if (!covered.isEmpty()) {
+                packages.replace(pubspecPath, packageAssets, packageAssets.withoutPaths(covered));
+            }
+        });
+    }
+
+    // Adds 'files' to every cached package, copying each package at most once
+    private void addFiles(@NotNull Map<String, VirtualFile> files) {
+        packages.forEach((pubspecPath, packageAssets) -> {
+            List<VirtualFile> covered = new ArrayList<>();
+            for (Map.Entry<String, VirtualFile> entry : files.entrySet()) {
+                String path = entry.getKey();
+                VirtualFile file = entry.getValue();
+                boolean isCovered = packageAssets.covers(path);
+                if (packageAssets.isInvalidatedBy(path) || (isCovered && (file == null || !file.isValid()))) {
+                    drop(pubspecPath, packageAssets, path);
+                    return;
+                }
+                if (isCovered) {
+                    covered.add(file);
+                }
+            }
+            if (covered.size() > MAX_PATCHED_PATHS) {
+                drop(pubspecPath, packageAssets, covered.size() + " added paths");
+            } else if (!covered.isEmpty()) {
+                packages.replace(pubspecPath, packageAssets, packageAssets.withFiles(covered));
+            }
+        });
+    }
+
+    private void invalidate(@NotNull String path) {
+        packages.forEach((pubspecPath, packageAssets) -> {
+            // Edits of the pubspec itself change its stamp, which lets getPackageAssets decide whether to expand again
+            if (path.equals(pubspecPath)) {
+                return;
+            }
+            if (packageAssets.isInvalidatedBy(path)) {
+                drop(pubspecPath, packageAssets, path);
+            }
+        });
+    }
+
+    private void drop(@NotNull String pubspecPath, @NotNull PackageAssets packageAssets, @NotNull String reason) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("package invalidated by " + reason + ", " + packageAssets);
+        }
+        packages.remove(pubspecPath, packageAssets);
+    }
+}
@@ -0,0 +1,34 @@
+package com.ixigua.completion.index;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+// Forwards VFS changes to the AssetIndex of the project, if the index has been created.
+public class AssetIndexListener implements BulkFileListener {
+
+    private final Project project;
+
+    public AssetIndexListener(@NotNull Project project) {
+        this.project = project;
+    }
+
+    @Override
+    public void before(@NotNull List<? extends VFileEvent> events) {
+        AssetIndex index = project.getServiceIfCreated(AssetIndex.class);
+        if (index != null) {
+            index.beforeEvents(events);
+        }
+    }
+
+    @Override
+    public void after(@NotNull List<? extends VFileEvent> events) {
+        AssetIndex index = project.getServiceIfCreated(AssetIndex.class);
+        if (index != null) {
+            index.afterEvents(events);
+        }
+    }
+}
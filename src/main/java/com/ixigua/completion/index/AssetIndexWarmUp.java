@@ -0,0 +1,100 @@
+package com.ixigua.completion.index;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectRootManager;
+import com.intellij.openapi.startup.StartupActivity;
+import com.intellij.openapi.util.registry.Registry;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.ixigua.completion.assets.Asset;
+import com.ixigua.completion.assets.ImageAsset;
+import com.ixigua.completion.assets.PackageAssets;
+import com.ixigua.completion.contributor.CompletionContext;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+// Fills the AssetIndex of a project in the background once the project is opened and indexed, so the first
+// completion does not have to parse the pubspecs and walk the asset folders of the project and its dependencies.
+// The icons of the first assets of the project's own packages are rendered as well, since those are shown first.
+public class AssetIndexWarmUp implements StartupActivity.DumbAware {
+
+    private static final Logger LOG = Logger.getInstance(AssetIndexWarmUp.class);
+    private static final String WARM_UP_KEY = "flutter.asset.completion.warm.up";
+    // The number of icons rendered per package, a fraction of what IconDecorator keeps in memory
+    private static final int MAX_ICONS_PER_PACKAGE = 512;
+
+    @Override
+    public void runActivity(@NotNull Project project) {
+        if (ApplicationManager.getApplication().isUnitTestMode() || !Registry.is(WARM_UP_KEY, true)) {
+            return;
+        }
+        // Scanning competes with indexing for the disk, wait until the IDE is done with it
+        DumbService.getInstance(project).runWhenSmart(() -> {
+            if (!project.isDisposed()) {
+                ProgressManager.getInstance().run(new WarmUpTask(project));
+            }
+        });
+    }
+
+    private static class WarmUpTask extends Task.Backgroundable {
+
+        WarmUpTask(@NotNull Project project) {
+            super(project, "Scanning Flutter assets", true);
+        }
+
+        @Override
+        public void run(@NotNull ProgressIndicator indicator) {
+            Project project = getProject();
+            AssetIndex index = AssetIndex.getInstance(project);
+            List<VirtualFile> pubspecs = ReadAction.compute(() -> findPubspecs(project));
+            indicator.setIndeterminate(false);
+            for (int i = 0; i < pubspecs.size(); i++) {
+                indicator.checkCanceled();
+                VirtualFile pubspec = pubspecs.get(i);
+                indicator.setText2(pubspec.getParent().getPresentableUrl());
+                indicator.setFraction((double) i / pubspecs.size());
+                // Gives way to write actions and starts over after them, so typing is never blocked by the scan
+                List<Asset> icons = ReadAction.nonBlocking(() -> {
+                    if (!pubspec.isValid()) {
+                        return new ArrayList<Asset>();
+                    }
+                    PackageAssets packageAssets = index.warmUp(new CompletionContext(project, pubspec, ""));
+                    List<Asset> assets = packageAssets.getAssets();
+                    return new ArrayList<>(assets.subList(0, Math.min(assets.size(), MAX_ICONS_PER_PACKAGE)));
+                }).expireWith(project).wrapProgress(indicator).executeSynchronously();
+                // Icons are decoded from the files on disk, which does not need a read action
+                for (Asset asset : icons) {
+                    indicator.checkCanceled();
+                    if (asset instanceof ImageAsset && asset.iconIfCached() == null) {
+                        asset.icon();
+                    }
+                }
+            }
+            indicator.setFraction(1);
+            LOG.info("warmed up the assets of " + pubspecs.size() + " packages");
+        }
+    }
+
+    // The pubspecs of the packages in the project, which are the pubspecs at its content roots
+    @NotNull
+    private static List<VirtualFile> findPubspecs(@NotNull Project project) {
+        Set<VirtualFile> pubspecs = new LinkedHashSet<>();
+        for (VirtualFile root : ProjectRootManager.getInstance(project).getContentRoots()) {
+            VirtualFile pubspec = root.findChild("pubspec.yaml");
+            if (pubspec != null && !pubspec.isDirectory()) {
+                pubspecs.add(pubspec);
+            }
+        }
+        return new ArrayList<>(pubspecs);
+    }
+}
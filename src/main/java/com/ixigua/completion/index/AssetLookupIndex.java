@@ -0,0 +1,292 @@
+package com.ixigua.completion.index;
+
+import com.intellij.openapi.progress.ProgressManager;
+import com.ixigua.completion.assets.Asset;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.function.IntPredicate;
+
+// A substring index over the lookup strings of a list of assets.
+//
+// Completion matches the typed string anywhere inside a lookup string ignoring case (see PlainPrefixMatcher), so a
+// plain prefix index is not enough. Instead we keep a suffix array: every suffix of every case-folded asset name,
+// sorted. All suffixes starting with the typed string form one contiguous slice, which we find with two binary
+// searches, so a query costs O(log N + k) instead of matching every asset.
+//
+// The lookup string of an asset depends on the package being edited: other packages prefix its name with
+// "packages/{source}/". Only the names are indexed, so one index serves every consuming package, and matches that
+// start inside the prefix are found when the index is queried.
+public class AssetLookupIndex {
+
+    // Marks the end of every name in 'text', it sorts before any other character
+    private static final char TERMINATOR = '\0';
+    // Slices shorter than this are sorted with insertion sort
+    private static final int INSERTION_SORT_THRESHOLD = 12;
+    // 'qualifierIds' value of assets every package refers to by their plain name
+    private static final int UNQUALIFIED = -1;
+
+    private final List<Asset> assets;
+    // The case-folded names of all assets, each one followed by TERMINATOR
+    private final char[] text;
+    // The offset of the name of the i-th asset in 'text', in ascending order
+    private final int[] starts;
+    // The offsets of all suffixes in 'text', sorted lexicographically
+    private final int[] suffixes;
+    // The packages other packages refer to the assets through, and their case-folded "packages/{source}/" prefixes
+    private final String[] qualifyingPackages;
+    private final char[][] qualifiers;
+    // The index in 'qualifyingPackages' of the package of the i-th asset, or UNQUALIFIED
+    private final int[] qualifierIds;
+
+    public AssetLookupIndex(@NotNull List<Asset> assets) {
+        this.assets = assets;
+        this.starts = new int[assets.size()];
+        this.qualifierIds = new int[assets.size()];
+        Map<String, Integer> packages = new LinkedHashMap<>();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < assets.size(); i++) {
+            ProgressManager.checkCanceled();
+            Asset asset = assets.get(i);
+            String qualifyingPackage = asset.getQualifyingPackage();
+            qualifierIds[i] = qualifyingPackage == null
+                    ? UNQUALIFIED
+                    : packages.computeIfAbsent(qualifyingPackage, key -> packages.size());
+            starts[i] = sb.length();
+            String name = asset.getName();
+            for (int j = 0; j < name.length(); j++) {
+                sb.append(fold(name.charAt(j)));
+            }
+            sb.append(TERMINATOR);
+        }
+        this.text = new char[sb.length()];
+        sb.getChars(0, sb.length(), text, 0);
+        this.qualifyingPackages = packages.keySet().toArray(new String[0]);
+        this.qualifiers = new char[qualifyingPackages.length][];
+        for (int i = 0; i < qualifiers.length; i++) {
+            qualifiers[i] = fold("packages/" + qualifyingPackages[i] + "/");
+        }
+
+        int count = 0;
+        for (char c : text) {
+            if (c != TERMINATOR) {
+                count++;
+            }
+        }
+        this.suffixes = new int[count];
+        int index = 0;
+        for (int i = 0; i < text.length; i++) {
+            if (text[i] != TERMINATOR) {
+                suffixes[index++] = i;
+            }
+        }
+        sort(text, suffixes, 0, suffixes.length, 0);
+    }
+
+    @NotNull
+    public List<Asset> getAssets() {
+        return assets;
+    }
+
+    // Returns the assets whose lookup string in 'packageName' contains 'prefix' ignoring case, in their original order
+    @NotNull
+    public List<Asset> findMatches(@NotNull String prefix, @NotNull String packageName) {
+        return findMatches(prefix, packageName, null);
+    }
+
+    // Like findMatches(prefix, packageName), but only returns the assets whose index in the list is accepted by
+    // 'filter'. The filter is applied to the indices, so the rejected assets are never read from the list.
+    @NotNull
+    public List<Asset> findMatches(@NotNull String prefix, @NotNull String packageName, @Nullable IntPredicate filter) {
+        if (prefix.isEmpty()) {
+            if (filter == null) {
+                return assets;
+            }
+            List<Asset> ret = new ArrayList<>();
+            for (int i = 0; i < assets.size(); i++) {
+                if (filter.test(i)) {
+                    ret.add(assets.get(i));
+                }
+            }
+            return ret;
+        }
+        char[] pattern = fold(prefix);
+        for (char c : pattern) {
+            if (c == TERMINATOR) {
+                return Collections.emptyList();
+            }
+        }
+        // The same asset may contain the pattern several times, collect the owners in a set to drop duplicates
+        BitSet owners = new BitSet(assets.size());
+        collectOwners(pattern, UNQUALIFIED, owners);
+        if (!packageName.isEmpty()) {
+            for (int qualifierId = 0; qualifierId < qualifiers.length; qualifierId++) {
+                if (!qualifyingPackages[qualifierId].equals(packageName)) {
+                    collectQualifiedOwners(pattern, qualifierId, owners);
+                }
+            }
+        }
+        if (owners.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Asset> ret = new ArrayList<>(owners.cardinality());
+        for (int i = owners.nextSetBit(0); i >= 0; i = owners.nextSetBit(i + 1)) {
+            if (filter == null || filter.test(i)) {
+                ret.add(assets.get(i));
+            }
+        }
+        return ret;
+    }
+
+    // Adds the assets qualified by 'qualifierId' whose lookup string contains 'pattern' at an offset inside the
+    // "packages/{source}/" prefix. Matches inside the names were already found by the caller.
+    private void collectQualifiedOwners(@NotNull char[] pattern, int qualifierId, @NotNull BitSet owners) {
+        char[] qualifier = qualifiers[qualifierId];
+        for (int offset = 0; offset < qualifier.length; offset++) {
+            int length = Math.min(pattern.length, qualifier.length - offset);
+            if (!regionMatches(qualifier, offset, pattern, length)) {
+                continue;
+            }
+            if (length == pattern.length) {
+                // The pattern is inside the prefix, every asset with this prefix matches
+                for (int i = 0; i < qualifierIds.length; i++) {
+                    if (qualifierIds[i] == qualifierId) {
+                        owners.set(i);
+                    }
+                }
+                return;
+            }
+            // The pattern continues into the name, which has to start with the rest of it
+            collectOwners(Arrays.copyOfRange(pattern, length, pattern.length), qualifierId, owners);
+        }
+    }
+
+    // Adds the assets whose name contains 'pattern'. If 'qualifierId' is not UNQUALIFIED, only the assets qualified by
+    // it whose name starts with 'pattern' are added.
+    private void collectOwners(@NotNull char[] pattern, int qualifierId, @NotNull BitSet owners) {
+        int from = lowerBound(pattern, false);
+        int to = lowerBound(pattern, true);
+        for (int i = from; i < to; i++) {
+            int owner = Arrays.binarySearch(starts, suffixes[i]);
+            if (qualifierId == UNQUALIFIED) {
+                owners.set(owner >= 0 ? owner : -owner - 2);
+            } else if (owner >= 0 && qualifierIds[owner] == qualifierId) {
+                owners.set(owner);
+            }
+        }
+    }
+
+    private static boolean regionMatches(@NotNull char[] text, int offset, @NotNull char[] pattern, int length) {
+        for (int i = 0; i < length; i++) {
+            if (text[offset + i] != pattern[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The index of the first suffix that is not less than 'pattern' (or, if 'upper' is set, the first suffix that
+    // is greater than every string starting with 'pattern')
+    private int lowerBound(@NotNull char[] pattern, boolean upper) {
+        int lo = 0;
+        int hi = suffixes.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = comparePrefix(suffixes[mid], pattern);
+            if (cmp < 0 || (upper && cmp == 0)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // Compares the suffix at 'offset' with 'pattern', returns 0 if the suffix starts with 'pattern'
+    private int comparePrefix(int offset, @NotNull char[] pattern) {
+        for (int i = 0; i < pattern.length; i++) {
+            char c = text[offset + i];
+            if (c != pattern[i]) {
+                return c < pattern[i] ? -1 : 1;
+            }
+        }
+        return 0;
+    }
+
+    // Multikey quicksort (Bentley & Sedgewick) of the suffixes in [lo, hi), which share their first 'depth' chars
+    private static void sort(@NotNull char[] text, @NotNull int[] a, int lo, int hi, int depth) {
+        while (hi - lo > INSERTION_SORT_THRESHOLD) {
+            ProgressManager.checkCanceled();
+            char pivot = medianOfThree(text[a[lo] + depth], text[a[(lo + hi) >>> 1] + depth], text[a[hi - 1] + depth]);
+            int lt = lo;
+            int gt = hi - 1;
+            int i = lo;
+            while (i <= gt) {
+                char c = text[a[i] + depth];
+                if (c < pivot) {
+                    swap(a, lt++, i++);
+                } else if (c > pivot) {
+                    swap(a, i, gt--);
+                } else {
+                    i++;
+                }
+            }
+            sort(text, a, lo, lt, depth);
+            // Suffixes that reached their terminator together are equal, there is nothing left to compare
+            if (pivot != TERMINATOR) {
+                sort(text, a, lt, gt + 1, depth + 1);
+            }
+            lo = gt + 1;
+        }
+        insertionSort(text, a, lo, hi, depth);
+    }
+
+    private static void insertionSort(@NotNull char[] text, @NotNull int[] a, int lo, int hi, int depth) {
+        for (int i = lo + 1; i < hi; i++) {
+            for (int j = i; j > lo && compareSuffixes(text, a[j], a[j - 1], depth) < 0; j--) {
+                swap(a, j, j - 1);
+            }
+        }
+    }
+
+    private static int compareSuffixes(@NotNull char[] text, int first, int second, int depth) {
+        for (int i = depth; ; i++) {
+            char c1 = text[first + i];
+            char c2 = text[second + i];
+            if (c1 != c2) {
+                return c1 < c2 ? -1 : 1;
+            }
+            if (c1 == TERMINATOR) {
+                return 0;
+            }
+        }
+    }
+
+    private static char medianOfThree(char a, char b, char c) {
+        if (a < b) {
+            return b < c ? b : (a < c ? c : a);
+        }
+        return a < c ? a : (b < c ? c : b);
+    }
+
+    private static void swap(@NotNull int[] a, int i, int j) {
+        int tmp = a[i];
+        a[i] = a[j];
+        a[j] = tmp;
+    }
+
+    // Two chars fold to the same value if they are equal ignoring case, like StringUtil.charsEqualIgnoreCase
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    @NotNull
+    private static char[] fold(@NotNull String s) {
+        char[] folded = new char[s.length()];
+        for (int i = 0; i < folded.length; i++) {
+            folded[i] = fold(s.charAt(i));
+        }
+        return folded;
+    }
+}
@@ -0,0 +1,62 @@
+package com.ixigua.completion.index;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import com.ixigua.completion.assets.AssetFinder;
+import com.ixigua.completion.pubspec.PubspecUtil;
+import org.jetbrains.annotations.NotNull;
+
+// Identifies the version of a pubspec an expanded package snapshot was made from, and how its declared folders were
+// expanded. The declared folders are not part of the key: AssetIndexListener patches the snapshots in place whenever
+// files below them change.
+public final class PackageSnapshotKey {
+    private final String pubspecPath;
+    private final long pubspecStamp;
+    // Whether declared folders were expanded to their direct children only, see AssetFinder.isDirectChildrenOnly()
+    private final boolean directChildrenOnly;
+
+    public PackageSnapshotKey(@NotNull String pubspecPath, long pubspecStamp, boolean directChildrenOnly) {
+        this.pubspecPath = pubspecPath;
+        this.pubspecStamp = pubspecStamp;
+        this.directChildrenOnly = directChildrenOnly;
+    }
+
+    @NotNull
+    public static PackageSnapshotKey of(@NotNull VirtualFile pubspec) {
+        return new PackageSnapshotKey(pubspec.getPath(),
+                PubspecUtil.getModificationStamp(pubspec),
+                AssetFinder.isDirectChildrenOnly());
+    }
+
+    @NotNull
+    public String getPubspecPath() {
+        return pubspecPath;
+    }
+
+    public long getPubspecStamp() {
+        return pubspecStamp;
+    }
+
+    public boolean isDirectChildrenOnly() {
+        return directChildrenOnly;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        PackageSnapshotKey that = (PackageSnapshotKey) o;
+        return pubspecStamp == that.pubspecStamp
+                && directChildrenOnly == that.directChildrenOnly
+                && pubspecPath.equals(that.pubspecPath);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * pubspecPath.hashCode() + Long.hashCode(pubspecStamp)) + Boolean.hashCode(directChildrenOnly);
+    }
+
+    @Override
+    public String toString() {
+        return pubspecPath + "@" + pubspecStamp + (directChildrenOnly ? " (direct children only)" : "");
+    }
+}
@@ -0,0 +1,147 @@
+package com.ixigua.completion.index;
+
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.IndexNotReadyException;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.util.indexing.*;
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.DataInputOutputUtil;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.IOUtil;
+import com.intellij.util.io.KeyDescriptor;
+import com.ixigua.completion.assets.AssetDeclarations;
+import com.ixigua.completion.assets.AssetFinder;
+import com.ixigua.completion.pubspec.PubspecUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+
+// Indexes the package name and the "assets" and "fonts" declarations of every pubspec.yaml in the project and its
+// libraries, including the packages in the pub cache. The IDE keeps the index up to date and persists it between
+// sessions, so the declarations of a dependency are read from the index instead of parsing its pubspec, and a
+// package can be found by its name without reading any package config.
+public class PubspecDeclarationsIndex extends FileBasedIndexExtension<String, AssetDeclarations> {
+
+    public static final ID<String, AssetDeclarations> NAME = ID.create("flutter.asset.completion.pubspec.declarations");
+    private static final String PUBSPEC_FILE_NAME = "pubspec.yaml";
+
+    // Returns the indexed declarations of 'pubspec', or null if the index cannot answer, e.g. while the IDE is
+    // indexing, for pubspecs outside the project and its libraries, and for pubspecs with unsaved changes
+    @Nullable
+    public static AssetDeclarations getDeclarations(@NotNull Project project, @NotNull VirtualFile pubspec) {
+        if (DumbService.isDumb(project) || FileDocumentManager.getInstance().isFileModified(pubspec)) {
+            return null;
+        }
+        try {
+            Map<String, AssetDeclarations> data = FileBasedIndex.getInstance().getFileData(NAME, pubspec, project);
+            return data.isEmpty() ? null : data.values().iterator().next();
+        } catch (IndexNotReadyException e) {
+            // Indexing started after the check above, the caller parses the pubspec instead
+            return null;
+        }
+    }
+
+    // Returns the pubspecs in 'scope' of the packages named 'packageName', or an empty list while the IDE is indexing
+    @NotNull
+    public static Collection<VirtualFile> findPubspecs(@NotNull Project project,
+                                                      @NotNull String packageName,
+                                                      @NotNull GlobalSearchScope scope) {
+        if (DumbService.isDumb(project)) {
+            return Collections.emptyList();
+        }
+        try {
+            return FileBasedIndex.getInstance().getContainingFiles(NAME, packageName, scope);
+        } catch (IndexNotReadyException e) {
+            // Indexing started after the check above, e.g. dumb mode is entered on the EDT without a write action
+            return Collections.emptyList();
+        }
+    }
+
+    @NotNull
+    @Override
+    public ID<String, AssetDeclarations> getName() {
+        return NAME;
+    }
+
+    @NotNull
+    @Override
+    public DataIndexer<String, AssetDeclarations, FileContent> getIndexer() {
+        return inputData -> {
+            Map<String, Object> pubspecInfo = PubspecUtil.parsePubspecInfo(inputData.getContentAsText());
+            if (pubspecInfo == null) {
+                return Collections.emptyMap();
+            }
+            AssetDeclarations declarations = AssetFinder.findDeclarations(pubspecInfo);
+            return Collections.singletonMap(declarations.getPackageName(), declarations);
+        };
+    }
+
+    @NotNull
+    @Override
+    public KeyDescriptor<String> getKeyDescriptor() {
+        return EnumeratorStringDescriptor.INSTANCE;
+    }
+
+    @NotNull
+    @Override
+    public DataExternalizer<AssetDeclarations> getValueExternalizer() {
+        return new DataExternalizer<AssetDeclarations>() {
+            @Override
+            public void save(@NotNull DataOutput out, AssetDeclarations value) throws IOException {
+                IOUtil.writeUTF(out, value.getPackageName());
+                out.writeBoolean(value.hasFlutterSection());
+                writeStrings(out, value.getAssets());
+                writeStrings(out, value.getFonts());
+            }
+
+            @Override
+            public AssetDeclarations read(@NotNull DataInput in) throws IOException {
+                String packageName = IOUtil.readUTF(in);
+                boolean hasFlutterSection = in.readBoolean();
+                List<String> assets = readStrings(in);
+                List<String> fonts = readStrings(in);
+                return new AssetDeclarations(packageName, hasFlutterSection ? assets : null, fonts);
+            }
+        };
+    }
+
+    private static void writeStrings(@NotNull DataOutput out, @NotNull List<String> strings) throws IOException {
+        DataInputOutputUtil.writeINT(out, strings.size());
+        for (String string : strings) {
+            IOUtil.writeUTF(out, string);
+        }
+    }
+
+    @NotNull
+    private static List<String> readStrings(@NotNull DataInput in) throws IOException {
+        int size = DataInputOutputUtil.readINT(in);
+        List<String> strings = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            strings.add(IOUtil.readUTF(in));
+        }
+        return strings;
+    }
+
+    @Override
+    public int getVersion() {
+        return 1;
+    }
+
+    @NotNull
+    @Override
+    public FileBasedIndex.InputFilter getInputFilter() {
+        return file -> PUBSPEC_FILE_NAME.equals(file.getName());
+    }
+
+    @Override
+    public boolean dependsOnFileContent() {
+        return true;
+    }
+}
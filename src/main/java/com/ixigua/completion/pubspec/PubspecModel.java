@@ -0,0 +1,319 @@
+package com.ixigua.completion.pubspec;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.events.*;
+import org.yaml.snakeyaml.nodes.*;
+import org.yaml.snakeyaml.resolver.Resolver;
+
+import java.io.StringReader;
+import java.util.*;
+
+// The parsed content of one version of a pubspec, which can update itself to a newer version of the text.
+//
+// While the user types in pubspec.yaml, the pubspec is read again after every keystroke, but completion only reads
+// the "name" and "flutter" entries. So instead of parsing the whole document again we diff the new text against the
+// previous one:
+// 1. an edit outside the "name" and "flutter" entries keeps the model as it is.
+// 2. an edit inside one of these entries parses only that entry again.
+// 3. any other edit, e.g. one that may add or remove a top-level key, parses the whole document.
+// Note that after the first two cases the other top-level values of the model may be out of date.
+class PubspecModel {
+
+    private static final String NAME_KEY = "name";
+    private static final String FLUTTER_KEY = "flutter";
+    private static final Resolver RESOLVER = new PubspecResolver();
+
+    private final String text;
+    private final Map<String, Object> info;
+    // The range of every top-level entry, from its key up to the key of the next entry, null if not incremental
+    private final Map<String, EntryRange> entryRanges;
+
+    private PubspecModel(@NotNull String text, @NotNull Map<String, Object> info, @Nullable Map<String, EntryRange> entryRanges) {
+        this.text = text;
+        this.info = Collections.unmodifiableMap(info);
+        this.entryRanges = entryRanges;
+    }
+
+    @NotNull
+    Map<String, Object> getInfo() {
+        return info;
+    }
+
+    // Parses the whole document, returns null if it is not a valid YAML mapping
+    @Nullable
+    static PubspecModel parse(@NotNull Yaml yaml, @NotNull String text) {
+        Node root;
+        try {
+            root = yaml.compose(new StringReader(text));
+        } catch (Exception e) {
+            return null;
+        }
+        if (!(root instanceof MappingNode)) {
+            return null;
+        }
+        Map<String, Object> info = new LinkedHashMap<>();
+        Map<Node, Object> constructed = new IdentityHashMap<>();
+        for (NodeTuple entry : ((MappingNode) root).getValue()) {
+            info.put(String.valueOf(toObject(entry.getKeyNode(), constructed)), toObject(entry.getValueNode(), constructed));
+        }
+        return new PubspecModel(text, info, findEntryRanges((MappingNode) root, text));
+    }
+
+    // Reads only the "name" and "flutter" entries of the document from the parser events, without composing nodes for
+    // anything else, e.g. the often large "dependencies" sections, and stops as soon as both have been read.
+    // Falls back to parse() for documents this cannot handle, e.g. ones using aliases.
+    @Nullable
+    static PubspecModel extract(@NotNull Yaml yaml, @NotNull String text) {
+        Map<String, Object> info = new LinkedHashMap<>();
+        try {
+            Iterator<Event> events = yaml.parse(new StringReader(text)).iterator();
+            // StreamStart, DocumentStart
+            events.next();
+            events.next();
+            if (!(events.next() instanceof MappingStartEvent)) {
+                return parse(yaml, text);
+            }
+            while (!info.containsKey(NAME_KEY) || !info.containsKey(FLUTTER_KEY)) {
+                Event key = events.next();
+                if (key instanceof MappingEndEvent) {
+                    break;
+                }
+                if (key instanceof ScalarEvent && isWanted(((ScalarEvent) key).getValue()) && !info.containsKey(((ScalarEvent) key).getValue())) {
+                    info.put(((ScalarEvent) key).getValue(), readObject(events, events.next()));
+                } else {
+                    skipObject(events, key);
+                    skipObject(events, events.next());
+                }
+            }
+        } catch (AliasEncounteredException e) {
+            return parse(yaml, text);
+        } catch (Exception e) {
+            return null;
+        }
+        return new PubspecModel(text, info, null);
+    }
+
+    private static boolean isWanted(@NotNull String key) {
+        return NAME_KEY.equals(key) || FLUTTER_KEY.equals(key);
+    }
+
+    // Builds the object starting with 'first' the same way toObject does
+    @Nullable
+    private static Object readObject(@NotNull Iterator<Event> events, @NotNull Event first) {
+        if (first instanceof AliasEvent) {
+            throw new AliasEncounteredException();
+        }
+        if (first instanceof MappingStartEvent) {
+            Map<Object, Object> map = new LinkedHashMap<>();
+            Event key;
+            while (!((key = events.next()) instanceof MappingEndEvent)) {
+                map.put(readObject(events, key), readObject(events, events.next()));
+            }
+            return map;
+        }
+        if (first instanceof SequenceStartEvent) {
+            List<Object> list = new ArrayList<>();
+            Event item;
+            while (!((item = events.next()) instanceof SequenceEndEvent)) {
+                list.add(readObject(events, item));
+            }
+            return list;
+        }
+        ScalarEvent scalar = (ScalarEvent) first;
+        // Same as the Composer: untagged scalars are resolved, explicitly tagged ones keep their tag
+        String tag = scalar.getTag();
+        Tag resolved = tag == null || tag.equals("!")
+                ? RESOLVER.resolve(NodeId.scalar, scalar.getValue(), scalar.getImplicit().canOmitTagInPlainScalar())
+                : new Tag(tag);
+        return toScalarObject(resolved, scalar.getValue());
+    }
+
+    // Consumes the events of the object starting with 'first'
+    private static void skipObject(@NotNull Iterator<Event> events, @NotNull Event first) {
+        int depth = first instanceof CollectionStartEvent ? 1 : 0;
+        while (depth > 0) {
+            Event event = events.next();
+            if (event instanceof CollectionStartEvent) {
+                depth++;
+            } else if (event instanceof CollectionEndEvent) {
+                depth--;
+            }
+        }
+    }
+
+    // Returns the model of 'newText', reusing as much of this model as possible, or null if 'newText' is not valid
+    @Nullable
+    PubspecModel update(@NotNull Yaml yaml, @NotNull String newText) {
+        if (newText.equals(text)) {
+            return this;
+        }
+        if (entryRanges == null) {
+            return parse(yaml, newText);
+        }
+        int prefix = 0;
+        int maxPrefix = Math.min(text.length(), newText.length());
+        while (prefix < maxPrefix && text.charAt(prefix) == newText.charAt(prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        int maxSuffix = maxPrefix - prefix;
+        while (suffix < maxSuffix && text.charAt(text.length() - 1 - suffix) == newText.charAt(newText.length() - 1 - suffix)) {
+            suffix++;
+        }
+        // The edit replaced [prefix, oldEnd) of the old text with [prefix, newEnd) of the new text
+        int oldEnd = text.length() - suffix;
+        int newEnd = newText.length() - suffix;
+        if (startsTopLevelLine(text, prefix, oldEnd) || startsTopLevelLine(newText, prefix, newEnd)) {
+            return parse(yaml, newText);
+        }
+        int editStart = prefix;
+        int delta = newEnd - oldEnd;
+        String editedKey = null;
+        for (Map.Entry<String, EntryRange> entry : entryRanges.entrySet()) {
+            EntryRange range = entry.getValue();
+            if (range.valueStart <= editStart && oldEnd <= range.end) {
+                editedKey = entry.getKey();
+                break;
+            }
+        }
+        if (editedKey == null) {
+            // The edit touches a key, or the comments in front of the first entry
+            return parse(yaml, newText);
+        }
+        Map<String, EntryRange> newRanges = new LinkedHashMap<>();
+        entryRanges.forEach((key, range) -> {
+            if (range.end < editStart) {
+                newRanges.put(key, range);
+            } else if (range.start < editStart) {
+                newRanges.put(key, new EntryRange(range.start, range.valueStart, range.end + delta));
+            } else {
+                newRanges.put(key, new EntryRange(range.start + delta, range.valueStart + delta, range.end + delta));
+            }
+        });
+        if (!NAME_KEY.equals(editedKey) && !FLUTTER_KEY.equals(editedKey)) {
+            return new PubspecModel(newText, info, newRanges);
+        }
+        EntryRange editedRange = newRanges.get(editedKey);
+        PubspecModel entry = parse(yaml, newText.substring(editedRange.start, editedRange.end));
+        if (entry == null || entry.info.size() != 1 || !entry.info.containsKey(editedKey)) {
+            return parse(yaml, newText);
+        }
+        Map<String, Object> newInfo = new LinkedHashMap<>(info);
+        newInfo.put(editedKey, entry.info.get(editedKey));
+        return new PubspecModel(newText, newInfo, newRanges);
+    }
+
+    // Only block mappings with plain keys in the first column, where every new top-level key starts a new line
+    @Nullable
+    private static Map<String, EntryRange> findEntryRanges(@NotNull MappingNode root, @NotNull String text) {
+        if (root.getFlowStyle() != DumperOptions.FlowStyle.BLOCK || hasSupplementaryCharacters(text)) {
+            return null;
+        }
+        List<NodeTuple> entries = root.getValue();
+        Map<String, EntryRange> ranges = new LinkedHashMap<>();
+        for (int i = 0; i < entries.size(); i++) {
+            Node key = entries.get(i).getKeyNode();
+            if (!(key instanceof ScalarNode) || key.getStartMark().getColumn() != 0) {
+                return null;
+            }
+            // The key must be followed by ": " or ":" and a line break, so edits behind it cannot change the key
+            int keyEnd = key.getEndMark().getIndex();
+            if (keyEnd + 1 >= text.length() || text.charAt(keyEnd) != ':' || " \r\n".indexOf(text.charAt(keyEnd + 1)) < 0) {
+                return null;
+            }
+            int start = key.getStartMark().getIndex();
+            int end = i + 1 < entries.size() ? entries.get(i + 1).getKeyNode().getStartMark().getIndex() : text.length();
+            if (ranges.put(((ScalarNode) key).getValue(), new EntryRange(start, keyEnd + 2, end)) != null) {
+                return null;
+            }
+        }
+        return ranges;
+    }
+
+    // Whether a line starting in [start, end] of 'text' begins with a character other than white space, which means
+    // the edit may have added, removed or renamed a top-level key
+    private static boolean startsTopLevelLine(@NotNull String text, int start, int end) {
+        for (int i = start; i <= end && i < text.length(); i++) {
+            if (i == 0 || text.charAt(i - 1) == '\n') {
+                char c = text.charAt(i);
+                if (c != ' ' && c != '\n' && c != '\r') {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // SnakeYAML marks count code points, so their indices only match char offsets without surrogate pairs
+    private static boolean hasSupplementaryCharacters(@NotNull String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.isSurrogate(text.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class EntryRange {
+        // The offset of the key
+        final int start;
+        // The first offset behind the ": " following the key
+        final int valueStart;
+        // The offset of the next key, or the end of the text
+        final int end;
+
+        EntryRange(int start, int valueStart, int end) {
+            this.start = start;
+            this.valueStart = valueStart;
+            this.end = end;
+        }
+    }
+
+    // Converts a node the way our Yaml constructs it: mappings, sequences, null, booleans and strings for all other scalars
+    @Nullable
+    private static Object toObject(@NotNull Node node, @NotNull Map<Node, Object> constructed) {
+        Object existing = constructed.get(node);
+        if (existing != null) {
+            return existing;
+        }
+        if (node instanceof MappingNode) {
+            Map<Object, Object> map = new LinkedHashMap<>();
+            constructed.put(node, map);
+            for (NodeTuple tuple : ((MappingNode) node).getValue()) {
+                map.put(toObject(tuple.getKeyNode(), constructed), toObject(tuple.getValueNode(), constructed));
+            }
+            return map;
+        }
+        if (node instanceof SequenceNode) {
+            List<Object> list = new ArrayList<>();
+            constructed.put(node, list);
+            for (Node item : ((SequenceNode) node).getValue()) {
+                list.add(toObject(item, constructed));
+            }
+            return list;
+        }
+        return toScalarObject(node.getTag(), ((ScalarNode) node).getValue());
+    }
+
+    @Nullable
+    private static Object toScalarObject(@NotNull Tag tag, @NotNull String value) {
+        if (Tag.NULL.equals(tag)) {
+            return null;
+        }
+        if (Tag.BOOL.equals(tag)) {
+            String lower = value.toLowerCase(Locale.ROOT);
+            return lower.equals("true") || lower.equals("yes") || lower.equals("on");
+        }
+        return value;
+    }
+
+    // Aliases refer to anchors anywhere in the document, which extract() may have skipped
+    private static class AliasEncounteredException extends RuntimeException {
+        AliasEncounteredException() {
+            super(null, null, false, false);
+        }
+    }
+}
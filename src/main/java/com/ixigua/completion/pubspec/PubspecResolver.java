@@ -0,0 +1,17 @@
+package com.ixigua.completion.pubspec;
+
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.resolver.Resolver;
+
+// Resolves plain scalars like Dart's YAML parser does for pubspecs: only booleans and nulls are typed,
+// everything else, including numbers and dates, stays a string.
+class PubspecResolver extends Resolver {
+    @Override
+    protected void addImplicitResolvers() {
+        this.addImplicitResolver(Tag.BOOL, BOOL, "yYnNtTfFoO");
+        this.addImplicitResolver(Tag.NULL, NULL, "~nN\u0000");
+        this.addImplicitResolver(Tag.NULL, EMPTY, null);
+        this.addImplicitResolver(new Tag("tag:yaml.org,2002:value"), VALUE, "=");
+        this.addImplicitResolver(Tag.MERGE, MERGE, "<");
+    }
+}
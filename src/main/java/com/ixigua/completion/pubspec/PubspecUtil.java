@@ -1,5 +1,9 @@
 package com.ixigua.completion.pubspec;
 
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.Document;
@@ -12,6 +16,7 @@ import com.intellij.openapi.util.ThrowableComputable;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.ixigua.completion.diagnostics.CompletionTimings;
 import com.jetbrains.lang.dart.util.PubspecYamlUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -20,7 +25,6 @@ import org.yaml.snakeyaml.Yaml;
 import org.yaml.snakeyaml.constructor.SafeConstructor;
 import org.yaml.snakeyaml.nodes.*;
 import org.yaml.snakeyaml.representer.Representer;
-import org.yaml.snakeyaml.resolver.Resolver;
 
 import java.io.*;
 import java.net.URI;
@@ -28,9 +32,14 @@ import java.util.*;
 
 public class PubspecUtil {
 
-    private static final Key<Pair<Long, Map<String, Object>>> MOD_STAMP_TO_PUBSPEC_NAME = Key.create("MOD_STAMP_TO_PUBSPEC_NAME");
+    private static final Key<Pair<Long, PubspecModel>> MOD_STAMP_TO_PUBSPEC_MODEL = Key.create("MOD_STAMP_TO_PUBSPEC_MODEL");
+    // Yaml instances are not thread-safe but expensive to create, so every thread keeps its own
+    private static final ThreadLocal<Yaml> YAML = ThreadLocal.withInitial(PubspecUtil::createYaml);
     private static final Logger LOG = Logger.getInstance(PubspecUtil.class);
     private static final String MOD_REQUESTER = "PubspecUtil";
+    private static final Key<DependencyCache> DEPENDENCY_CACHE = Key.create("FLUTTER_ASSET_DEPENDENCY_CACHE");
+    public static final String PACKAGE_CONFIG_PATH = ".dart_tool/package_config.json";
+    public static final String PACKAGES_PATH = ".packages";
 
     public static VirtualFile findPubspecYamlFile(@NotNull Project project, @NotNull VirtualFile currentFile) {
         return PubspecYamlUtil.findPubspecYamlFile(project, currentFile);
@@ -46,57 +55,56 @@ public class PubspecUtil {
     @Nullable
     public static Map<String, Object> getPubspecYamlInfo(@NotNull VirtualFile pubspecYamlFile) {
 
-        Pair<Long, Map<String, Object>> data = pubspecYamlFile.getUserData(MOD_STAMP_TO_PUBSPEC_NAME);
+        Pair<Long, PubspecModel> data = pubspecYamlFile.getUserData(MOD_STAMP_TO_PUBSPEC_MODEL);
         FileDocumentManager documentManager = FileDocumentManager.getInstance();
         Document cachedDocument = documentManager.getCachedDocument(pubspecYamlFile);
-        Long currentTimestamp = cachedDocument != null ? cachedDocument.getModificationStamp() : pubspecYamlFile.getModificationCount();
+        Long currentTimestamp = getModificationStamp(pubspecYamlFile);
         Long cachedTimestamp = Pair.getFirst(data);
-        if (cachedTimestamp == null || !cachedTimestamp.equals(currentTimestamp)) {
-            data = null;
-            pubspecYamlFile.putUserData(MOD_STAMP_TO_PUBSPEC_NAME, null);
-
-            try {
-                Map<String, Object> pubspecYamlInfo;
-                if (cachedDocument != null) {
-                    pubspecYamlInfo = loadPubspecYamlInfo(cachedDocument.getText());
-                } else {
-                    pubspecYamlInfo = loadPubspecYamlInfo(VfsUtilCore.loadText(pubspecYamlFile));
-                }
-
-                if (pubspecYamlInfo != null) {
-                    data = Pair.create(currentTimestamp, pubspecYamlInfo);
-                    pubspecYamlFile.putUserData(MOD_STAMP_TO_PUBSPEC_NAME, data);
-                }
-            } catch (IOException ignored) {
+        if (cachedTimestamp != null && cachedTimestamp.equals(currentTimestamp)) {
+            return data.second.getInfo();
+        }
+        long start = CompletionTimings.start();
+        try {
+            String text = cachedDocument != null ? cachedDocument.getText() : VfsUtilCore.loadText(pubspecYamlFile);
+            PubspecModel model;
+            if (cachedDocument == null) {
+                // Usually the pubspec of a dependency, which is read once and never edited, so we only extract what
+                // completion needs from it
+                model = PubspecModel.extract(YAML.get(), text);
+            } else {
+                // Typing in the pubspec only changes a small part of it, so the previous model is updated incrementally
+                PubspecModel previous = Pair.getSecond(data);
+                model = previous != null ? previous.update(YAML.get(), text) : PubspecModel.parse(YAML.get(), text);
             }
+            if (model == null) {
+                return null;
+            }
+            pubspecYamlFile.putUserData(MOD_STAMP_TO_PUBSPEC_MODEL, Pair.create(currentTimestamp, model));
+            return model.getInfo();
+        } catch (IOException ignored) {
+            return null;
+        } finally {
+            CompletionTimings.record(CompletionTimings.Stage.PUBSPEC_PARSE, start);
         }
-
-        return Pair.getSecond(data);
     }
 
+    // Parses the "name" and "flutter" entries of a pubspec which is not open in an editor, e.g. to index it. Returns
+    // null if the text is no valid pubspec.
     @Nullable
-    private static Map<String, Object> loadPubspecYamlInfo(@NotNull String pubspecYamlFileContents) {
-
-        Yaml yaml = createYaml();
+    public static Map<String, Object> parsePubspecInfo(@NotNull CharSequence text) {
+        PubspecModel model = PubspecModel.extract(YAML.get(), text.toString());
+        return model != null ? model.getInfo() : null;
+    }
 
-        try {
-            return yaml.load(pubspecYamlFileContents);
-        } catch (Exception var3) {
-            return null;
-        }
+    // The stamp changes whenever the content of the pubspec changes, including unsaved changes in the editor.
+    public static long getModificationStamp(@NotNull VirtualFile pubspecYamlFile) {
+        Document cachedDocument = FileDocumentManager.getInstance().getCachedDocument(pubspecYamlFile);
+        return cachedDocument != null ? cachedDocument.getModificationStamp() : pubspecYamlFile.getModificationCount();
     }
 
     @NotNull
     private static Yaml createYaml() {
-        return new Yaml(new SafeConstructor(), new Representer(), new DumperOptions(), new Resolver() {
-            protected void addImplicitResolvers() {
-                this.addImplicitResolver(Tag.BOOL, BOOL, "yYnNtTfFoO");
-                this.addImplicitResolver(Tag.NULL, NULL, "~nN\u0000");
-                this.addImplicitResolver(Tag.NULL, EMPTY, null);
-                this.addImplicitResolver(new Tag("tag:yaml.org,2002:value"), VALUE, "=");
-                this.addImplicitResolver(Tag.MERGE, MERGE, "<");
-            }
-        });
+        return new Yaml(new SafeConstructor(), new Representer(), new DumperOptions(), new PubspecResolver());
     }
 
     /**
@@ -153,8 +161,7 @@ public class PubspecUtil {
     @NotNull
     public static Pair<Integer, String> insertAssets(@NotNull String pubspecContent, @NotNull String[] assets, @NotNull String lineSeparator) {
         StringReader reader = new StringReader(pubspecContent);
-        final Yaml yaml = createYaml();
-        Node yamlNode = yaml.compose(reader);
+        Node yamlNode = YAML.get().compose(reader);
         if (!(yamlNode instanceof MappingNode)) {
             reader.close();
             throw new IllegalStateException("pubspecContent MUST be mapping");
@@ -217,28 +224,104 @@ public class PubspecUtil {
         return new Pair<>(offset, sb.toString());
     }
 
+    /**
+     * find the pubspec files of all packages the package of <code>pubspecYamlFile</code> depends on.
+     * the result is read from ".dart_tool/package_config.json" (or ".packages" for older Flutter versions) and cached
+     * until one of these files changes.
+     *
+     * @return package name to pubspec file, the value is null if the package cannot be found on disk.
+     */
+    @NotNull
     public static Map<String, VirtualFile> findAllDependentPubspecFiles(@NotNull VirtualFile pubspecYamlFile) {
-        // flutter project must include a file named ".packages", this file records all dependency information.
-        VirtualFile packagesFile = pubspecYamlFile.getParent().findFileByRelativePath(".packages");
-        if (packagesFile == null) {
-            LOG.info("\".packages\" file is null!");
-            return Collections.emptyMap();
+        VirtualFile packageDirectory = pubspecYamlFile.getParent();
+        VirtualFile packageConfigFile = findRegularFile(packageDirectory, PACKAGE_CONFIG_PATH);
+        VirtualFile packagesFile = findRegularFile(packageDirectory, PACKAGES_PATH);
+        long packageConfigStamp = packageConfigFile != null ? packageConfigFile.getModificationStamp() : -1;
+        long packagesStamp = packagesFile != null ? packagesFile.getModificationStamp() : -1;
+
+        DependencyCache cache = pubspecYamlFile.getUserData(DEPENDENCY_CACHE);
+        if (cache != null && cache.isUpToDate(packageConfigStamp, packagesStamp)) {
+            return cache.dependencies;
         }
-        if (!packagesFile.isValid()) {
-            LOG.info("\".packages\" file is invalid!");
-            return Collections.emptyMap();
+
+        long start = CompletionTimings.start();
+        Map<String, VirtualFile> ret = null;
+        // modern Flutter versions only write "package_config.json", older ones only write ".packages"
+        if (packageConfigFile != null) {
+            ret = parsePackageConfig(packageConfigFile);
+        }
+        if (ret == null && packagesFile != null) {
+            ret = parsePackages(pubspecYamlFile, packagesFile);
         }
-        if (!packagesFile.exists() || packagesFile.isDirectory()) {
-            LOG.info("\".packages\" file is either a folder or does not exist!");
-            return Collections.emptyMap();
+        if (ret == null) {
+            LOG.info("neither \"" + PACKAGE_CONFIG_PATH + "\" nor \"" + PACKAGES_PATH + "\" can be read in " + packageDirectory);
+            ret = Collections.emptyMap();
         }
-        //The format of the information in ".packages" file is as follows:
-        //package_name:file:///path/to/package_name/lib/
-        //each line can be spilt by ":" into 2 parts: package name and url
-        // note: the first line is comment should be ignored, the last line is current package should be ignored too.
-        Map<String, VirtualFile> ret = new HashMap<>();
+        ret = Collections.unmodifiableMap(ret);
+        pubspecYamlFile.putUserData(DEPENDENCY_CACHE, new DependencyCache(packageConfigStamp, packagesStamp, ret));
+        CompletionTimings.record(CompletionTimings.Stage.DEPENDENCIES, start);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("dependencies of " + pubspecYamlFile + ": " + ret);
+        }
+        return ret;
+    }
+
+    @Nullable
+    private static VirtualFile findRegularFile(@NotNull VirtualFile directory, @NotNull String relativePath) {
+        VirtualFile file = directory.findFileByRelativePath(relativePath);
+        return file != null && file.isValid() && !file.isDirectory() ? file : null;
+    }
+
+    // The format of "package_config.json" is as follows:
+    // {
+    //   "configVersion": 2,
+    //   "packages": [
+    //     { "name": "package_name", "rootUri": "file:///path/to/package_name/", "packageUri": "lib/" },
+    //     { "name": "my_app", "rootUri": "../", "packageUri": "lib/" }
+    //   ]
+    // }
+    // a relative rootUri is relative to the folder containing "package_config.json".
+    @Nullable
+    private static Map<String, VirtualFile> parsePackageConfig(@NotNull VirtualFile packageConfigFile) {
+        Map<String, VirtualFile> ret = new LinkedHashMap<>();
         try {
-            BufferedReader reader = new BufferedReader(new InputStreamReader(packagesFile.getInputStream()));
+            JsonObject config = JsonParser.parseString(VfsUtilCore.loadText(packageConfigFile)).getAsJsonObject();
+            JsonArray packages = config.getAsJsonArray("packages");
+            if (packages == null) {
+                return null;
+            }
+            for (JsonElement element : packages) {
+                ProgressManager.checkCanceled();
+                if (!element.isJsonObject()) {
+                    continue;
+                }
+                JsonObject pkg = element.getAsJsonObject();
+                JsonElement name = pkg.get("name");
+                JsonElement rootUri = pkg.get("rootUri");
+                if (name == null || rootUri == null) {
+                    continue;
+                }
+                String root = rootUri.getAsString();
+                if (!root.endsWith("/")) {
+                    root += "/";
+                }
+                ret.put(name.getAsString(), resolveUri(packageConfigFile.getParent(), root + "pubspec.yaml"));
+            }
+        } catch (Exception e) {
+            LOG.info("cannot read \"" + PACKAGE_CONFIG_PATH + "\" file, error: " + e);
+            return null;
+        }
+        return ret;
+    }
+
+    //The format of the information in ".packages" file is as follows:
+    //package_name:file:///path/to/package_name/lib/
+    //each line can be spilt by ":" into 2 parts: package name and url
+    // note: the first line is comment should be ignored.
+    @Nullable
+    private static Map<String, VirtualFile> parsePackages(@NotNull VirtualFile pubspecYamlFile, @NotNull VirtualFile packagesFile) {
+        Map<String, VirtualFile> ret = new LinkedHashMap<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(packagesFile.getInputStream()))) {
             while (reader.ready()) {
                 String line = reader.readLine().trim();
                 if (line.startsWith("#")) {
@@ -251,19 +334,47 @@ public class PubspecUtil {
                 ProgressManager.checkCanceled();
                 String path = pair[1];
                 path = path.replace("lib/", "pubspec.yaml");
-                VirtualFile dep;
-                if (path.startsWith("file:")) {
-                    File depPubspecFile = new File(new URI(path));
-                    dep = LocalFileSystem.getInstance().findFileByIoFile(depPubspecFile);
-                } else {
-                    dep = pubspecYamlFile.getParent().findFileByRelativePath(path);
-                }
-                ret.put(pair[0], dep);
+                ret.put(pair[0], resolveUri(pubspecYamlFile.getParent(), path));
             }
-        } catch (Exception e) {
+        } catch (IOException | RuntimeException e) {
             LOG.info("cannot read \".packages\" file, error: " + e);
+            return null;
         }
-        LOG.debug("packages file content: " + ret);
         return ret;
     }
+
+    @Nullable
+    private static VirtualFile resolveUri(@NotNull VirtualFile baseDirectory, @NotNull String uri) {
+        if (uri.startsWith("file:")) {
+            File file = new File(URI.create(uri));
+            return LocalFileSystem.getInstance().findFileByIoFile(file);
+        }
+        return baseDirectory.findFileByRelativePath(uri);
+    }
+
+    // The dependencies of a pubspec, valid as long as the files they were read from are not modified, created
+    // or deleted, and no dependency has been deleted since.
+    private static class DependencyCache {
+        final long packageConfigStamp;
+        final long packagesStamp;
+        final Map<String, VirtualFile> dependencies;
+
+        DependencyCache(long packageConfigStamp, long packagesStamp, @NotNull Map<String, VirtualFile> dependencies) {
+            this.packageConfigStamp = packageConfigStamp;
+            this.packagesStamp = packagesStamp;
+            this.dependencies = dependencies;
+        }
+
+        boolean isUpToDate(long packageConfigStamp, long packagesStamp) {
+            if (this.packageConfigStamp != packageConfigStamp || this.packagesStamp != packagesStamp) {
+                return false;
+            }
+            for (VirtualFile dependency : dependencies.values()) {
+                if (dependency != null && !dependency.isValid()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
 }
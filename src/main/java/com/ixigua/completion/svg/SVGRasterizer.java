@@ -0,0 +1,232 @@
+package com.ixigua.completion.svg;
+
+import com.intellij.util.LowMemoryWatcher;
+import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
+import org.apache.batik.bridge.BridgeContext;
+import org.apache.batik.bridge.GVTBuilder;
+import org.apache.batik.bridge.UserAgentAdapter;
+import org.apache.batik.gvt.GraphicsNode;
+import org.apache.batik.util.XMLResourceDescriptor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import java.awt.*;
+import java.awt.geom.Dimension2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Renders SVG files directly at the requested size.
+ * <p>
+ * Unlike {@link SVGImageReader}, which transcodes an SVG at its intrinsic size, the rasterizer scales the GVT tree
+ * while painting it, so an SVG with a huge viewBox costs no more than an icon sized one. The GVT trees of recently
+ * rendered files are cached, so rendering the same file at another scale does not parse the XML again. The cache is
+ * bounded by the number of files and by their size, and it is cleared when the IDE is running low on memory.
+ */
+public class SVGRasterizer {
+
+    private static final int MAX_CACHED_DOCUMENTS = 64;
+    // A GVT tree, with the DOM and the BridgeContext it was built from, takes a multiple of the size of its SVG source.
+    // The sizes of the cached files are bounded, so a few illustrations do not hold as much memory as 64 of them would.
+    private static final long MAX_CACHED_DOCUMENT_BYTES = 1024 * 1024;
+    // The viewport used for SVGs that declare neither a size nor a viewBox, same as the Batik transcoders
+    private static final int DEFAULT_VIEWPORT_SIZE = 400;
+
+    // guarded by itself, iterates from the least recently used document to the most recently used one
+    private static final LinkedHashMap<String, ParsedSVG> PARSED_SVG_CACHE = new LinkedHashMap<>(16, 0.75f, true);
+    // guarded by PARSED_SVG_CACHE
+    private static long cachedBytes;
+    // The watcher only references its runnable weakly, so it has to be kept alive here
+    private static final LowMemoryWatcher LOW_MEMORY_WATCHER = LowMemoryWatcher.register(SVGRasterizer::clearCache);
+
+    /**
+     * Renders the SVG in <code>file</code> scaled to fit in <code>boundWidth</code> x <code>boundHeight</code>,
+     * keeping its aspect ratio. Transparent pixels are rendered white, like {@link BufferedImageTranscoder} does.
+     *
+     * @param file        the SVG file.
+     * @param boundWidth  the maximum width of the image.
+     * @param boundHeight the maximum height of the image.
+     * @return the rendered image.
+     */
+    @NotNull
+    public static BufferedImage render(@NotNull File file, int boundWidth, int boundHeight) throws IOException {
+        BufferedImage image = render(parse(file), boundWidth, boundHeight, file);
+        if (image != null) {
+            return image;
+        }
+        // The cached document has been evicted and disposed before it could be painted, parse it again just for this
+        ParsedSVG svg = build(file, file.length());
+        try {
+            image = render(svg, boundWidth, boundHeight, file);
+        } finally {
+            svg.dispose();
+        }
+        if (image == null) {
+            throw new IOException("svg-rendering-error " + file);
+        }
+        return image;
+    }
+
+    @Nullable
+    private static BufferedImage render(@NotNull ParsedSVG svg, int boundWidth, int boundHeight, @NotNull File file)
+            throws IOException {
+        double scale = Math.min(boundWidth / svg.width, boundHeight / svg.height);
+        int width = Math.max(1, (int) Math.round(svg.width * scale));
+        int height = Math.max(1, (int) Math.round(svg.height * scale));
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setColor(Color.white);
+            g.fillRect(0, 0, width, height);
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.scale(scale, scale);
+            // GVT trees are not thread-safe, a cached tree may be painted by another thread at the same time
+            synchronized (svg) {
+                if (svg.context == null) {
+                    return null;
+                }
+                svg.root.paint(g);
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("svg-rendering-error " + file, e);
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    @NotNull
+    private static ParsedSVG parse(@NotNull File file) throws IOException {
+        long length = file.length();
+        String key = file.getPath() + ':' + length + ':' + file.lastModified();
+        synchronized (PARSED_SVG_CACHE) {
+            ParsedSVG svg = PARSED_SVG_CACHE.get(key);
+            if (svg != null) {
+                return svg;
+            }
+        }
+        ParsedSVG svg = build(file, length);
+        cache(key, svg);
+        return svg;
+    }
+
+    @NotNull
+    private static ParsedSVG build(@NotNull File file, long length) throws IOException {
+        BridgeContext context = null;
+        try {
+            SAXSVGDocumentFactory factory = new SAXSVGDocumentFactory(XMLResourceDescriptor.getXMLParserClassName());
+            Document document = factory.createDocument(file.toURI().toString());
+            Dimension2D viewport = viewportSize(document.getDocumentElement());
+            UserAgentAdapter userAgent = new UserAgentAdapter() {
+                @Override
+                public Dimension2D getViewportSize() {
+                    return viewport;
+                }
+            };
+            context = new BridgeContext(userAgent);
+            context.setDynamicState(BridgeContext.STATIC);
+            GraphicsNode root = new GVTBuilder().build(context, document);
+            Dimension2D size = context.getDocumentSize();
+            if (root == null || size.getWidth() <= 0 || size.getHeight() <= 0) {
+                context.dispose();
+                throw new IOException("svg has no content " + file);
+            }
+            return new ParsedSVG(root, context, size.getWidth(), size.getHeight(), length);
+        } catch (RuntimeException e) {
+            if (context != null) {
+                context.dispose();
+            }
+            throw new IOException("svg-parsing-error " + file, e);
+        }
+    }
+
+    // Adds 'svg' to the cache and disposes the least recently used documents beyond the limits.
+    // They are disposed outside of the cache lock, since disposing waits for the threads painting them.
+    private static void cache(@NotNull String key, @NotNull ParsedSVG svg) {
+        List<ParsedSVG> evicted = new ArrayList<>();
+        synchronized (PARSED_SVG_CACHE) {
+            ParsedSVG previous = PARSED_SVG_CACHE.put(key, svg);
+            if (previous != null) {
+                cachedBytes -= previous.bytes;
+                evicted.add(previous);
+            }
+            cachedBytes += svg.bytes;
+            Iterator<ParsedSVG> iterator = PARSED_SVG_CACHE.values().iterator();
+            // The document just added is kept even if it is larger than the limit on its own
+            while ((PARSED_SVG_CACHE.size() > MAX_CACHED_DOCUMENTS || cachedBytes > MAX_CACHED_DOCUMENT_BYTES)
+                    && PARSED_SVG_CACHE.size() > 1 && iterator.hasNext()) {
+                ParsedSVG eldest = iterator.next();
+                iterator.remove();
+                cachedBytes -= eldest.bytes;
+                evicted.add(eldest);
+            }
+        }
+        for (ParsedSVG eldest : evicted) {
+            eldest.dispose();
+        }
+    }
+
+    private static void clearCache() {
+        List<ParsedSVG> evicted;
+        synchronized (PARSED_SVG_CACHE) {
+            evicted = new ArrayList<>(PARSED_SVG_CACHE.values());
+            PARSED_SVG_CACHE.clear();
+            cachedBytes = 0;
+        }
+        for (ParsedSVG svg : evicted) {
+            svg.dispose();
+        }
+    }
+
+    // SVGs without a width or height fill the viewport, so we use their viewBox as the viewport to keep them in shape
+    @NotNull
+    private static Dimension2D viewportSize(@NotNull Element root) {
+        String[] viewBox = root.getAttribute("viewBox").trim().split("[\\s,]+");
+        if (viewBox.length == 4) {
+            try {
+                double width = Double.parseDouble(viewBox[2]);
+                double height = Double.parseDouble(viewBox[3]);
+                if (width > 0 && height > 0) {
+                    return new Dimension((int) Math.ceil(width), (int) Math.ceil(height));
+                }
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return new Dimension(DEFAULT_VIEWPORT_SIZE, DEFAULT_VIEWPORT_SIZE);
+    }
+
+    private static class ParsedSVG {
+        final GraphicsNode root;
+        final double width;
+        final double height;
+        // The size of the SVG source, an estimate of the memory the document holds
+        final long bytes;
+        // guarded by 'this', null once the document has been disposed
+        BridgeContext context;
+
+        ParsedSVG(@NotNull GraphicsNode root, @NotNull BridgeContext context, double width, double height, long bytes) {
+            this.root = root;
+            this.context = context;
+            this.width = width;
+            this.height = height;
+            this.bytes = bytes;
+        }
+
+        // Releases the DOM and the bridges the context references, the tree must not be painted afterwards
+        synchronized void dispose() {
+            if (context != null) {
+                context.dispose();
+                context = null;
+            }
+        }
+    }
+}
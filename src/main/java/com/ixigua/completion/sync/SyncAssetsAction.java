@@ -59,7 +59,8 @@ public class SyncAssetsAction extends AnAction {
 
     @Override
     public boolean isDumbAware() {
-        return false;
+        // Only the VFS and the pubspec document are used, both are available while the IDE is indexing
+        return true;
     }
 
     @Nullable
@@ -0,0 +1,60 @@
+package com.ixigua.completion.transform;
+
+import com.intellij.openapi.util.text.StringUtil;
+import com.ixigua.completion.svg.SVGRasterizer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+// Decodes images only as large as needed for a thumbnail.
+// The dimensions are read from the image header first, then the image is decoded with source subsampling, so the
+// memory and time spent on a 4K splash screen are about the same as on an icon sized image.
+public class ThumbnailReader {
+
+    // Reads the image of 'file' subsampled to no less than what resizing it to fit in boundWidth x boundHeight needs.
+    // Returns null if no ImageReader can decode the file.
+    @Nullable
+    public static BufferedImage read(@NotNull File file, int boundWidth, int boundHeight) throws IOException {
+        // SVGs are rendered directly at the bounds instead of being rasterized at their intrinsic size
+        if (StringUtil.endsWithIgnoreCase(file.getName(), ".svg")) {
+            return SVGRasterizer.render(file, boundWidth, boundHeight);
+        }
+        try (ImageInputStream stream = ImageIO.createImageInputStream(file)) {
+            if (stream == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = subsampling(reader.getWidth(0), reader.getHeight(0), boundWidth, boundHeight);
+                if (subsampling > 1) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // The largest factor that keeps the subsampled image at least as large as the image resized to fit the bounds
+    static int subsampling(int width, int height, int boundWidth, int boundHeight) {
+        if (width <= 0 || height <= 0 || boundWidth <= 0 || boundHeight <= 0) {
+            return 1;
+        }
+        return Math.max(1, Math.max(width / boundWidth, height / boundHeight));
+    }
+}
@@ -0,0 +1,75 @@
+import com.intellij.openapi.application.WriteAction;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import com.ixigua.completion.assets.AssetFinder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class AssetFinderTest extends BasePlatformTestCase {
+
+    public void testFlattenRelativePaths_namesWithRegexCharacters() throws Exception {
+        VirtualFile root = myFixture.getTempDirFixture().findOrCreateDir("package");
+        WriteAction.runAndWait(() -> {
+            VirtualFile folder = root.createChildDirectory(this, "assets").createChildDirectory(this, "a+b (copy)");
+            folder.createChildData(this, "icon[2x].png");
+            folder.createChildData(this, "$home^.png");
+            folder.createChildData(this, ".DS_Store");
+        });
+        List<String> names = new ArrayList<>();
+        AssetFinder.flattenRelativePaths(root.findChild("assets"), root, (name, file) -> names.add(name));
+        assertSameElements(names, "assets/a+b (copy)/icon[2x].png", "assets/a+b (copy)/$home^.png");
+    }
+
+    public void testFlattenRelativePaths_singleFile() throws Exception {
+        VirtualFile root = myFixture.getTempDirFixture().findOrCreateDir("package");
+        VirtualFile file = WriteAction.computeAndWait(() -> root.createChildDirectory(this, "lib").createChildData(this, "a+b.png"));
+        List<String> names = new ArrayList<>();
+        AssetFinder.flattenRelativePaths(file, root.findChild("lib"), (name, child) -> names.add(name));
+        assertSameElements(names, "a+b.png");
+    }
+
+    public void testFlattenRelativePaths_directChildrenOnly() throws Exception {
+        VirtualFile root = myFixture.getTempDirFixture().findOrCreateDir("package");
+        VirtualFile images = WriteAction.computeAndWait(() -> {
+            VirtualFile folder = root.createChildDirectory(this, "images");
+            folder.createChildData(this, "a.png");
+            folder.createChildDirectory(this, "2.0x").createChildData(this, "a.png");
+            folder.createChildDirectory(this, "3x").createChildData(this, "a.png");
+            VirtualFile raw = folder.createChildDirectory(this, "raw");
+            raw.createChildData(this, "b.png");
+            raw.createChildDirectory(this, "2.0x").createChildData(this, "b.png");
+            return folder;
+        });
+        List<String> names = new ArrayList<>();
+        AssetFinder.flattenRelativePaths(images, root, images, (name, file) -> names.add(name));
+        assertSameElements(names, "images/a.png", "images/2.0x/a.png", "images/3x/a.png");
+
+        // Files added later are filtered the same way
+        names.clear();
+        AssetFinder.flattenRelativePaths(images.findFileByRelativePath("raw/b.png"), root, images, (name, file) -> names.add(name));
+        assertEmpty(names);
+    }
+
+    public void testFlattenRelativePaths_nestedFolders() throws Exception {
+        VirtualFile root = myFixture.getTempDirFixture().findOrCreateDir("package");
+        List<String> expected = new ArrayList<>();
+        VirtualFile assets = WriteAction.computeAndWait(() -> {
+            VirtualFile folder = root.createChildDirectory(this, "assets");
+            for (int i = 0; i < 10; i++) {
+                VirtualFile child = folder.createChildDirectory(this, "folder_" + i);
+                for (int j = 0; j < 10; j++) {
+                    child.createChildData(this, "image_" + j + "@2x.png");
+                    expected.add("assets/folder_" + i + "/image_" + j + "@2x.png");
+                }
+            }
+            return folder;
+        });
+        List<String> names = new ArrayList<>();
+        AssetFinder.flattenRelativePaths(assets, root, (name, file) -> {
+            assertEquals(root.getPath() + "/" + name, file.getPath());
+            names.add(name);
+        });
+        assertSameElements(names, expected);
+    }
+}
@@ -0,0 +1,48 @@
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import com.ixigua.completion.assets.Asset;
+import com.ixigua.completion.assets.FontAsset;
+import com.ixigua.completion.assets.ImageAsset;
+import com.ixigua.completion.index.AssetLookupIndex;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class AssetLookupIndexTest extends BasePlatformTestCase {
+
+    private final Asset play = new ImageAsset("assets/images/png/play.png", null, "app");
+    private final Asset pause = new ImageAsset("assets/images/png/Pause.png", null, "app");
+    private final Asset arrow = new ImageAsset("images/arrow_right.png", null, "xg_appearance");
+    private final Asset font = new FontAsset("DINAlternateBold", null, "xg_appearance");
+
+    private final List<Asset> assets = Arrays.asList(play, pause, arrow, font);
+
+    private final AssetLookupIndex index = new AssetLookupIndex(assets);
+
+    public void testFindMatches_emptyPrefixMatchesEverything() {
+        assertEquals(assets, index.findMatches("", "app"));
+    }
+
+    public void testFindMatches_substringIgnoringCase() {
+        assertEquals(Arrays.asList(play, pause), index.findMatches("PNG/", "app"));
+        assertEquals(Arrays.asList(pause), index.findMatches("pause", "app"));
+        assertEquals(Arrays.asList(font), index.findMatches("alternate", "app"));
+        assertEmpty(index.findMatches("playx", "app"));
+    }
+
+    public void testFindMatches_assetMatchedTwiceIsReturnedOnce() {
+        assertEquals(Arrays.asList(play, pause, arrow), index.findMatches("png", "app"));
+    }
+
+    public void testFindMatches_lookupStringDependsOnConsumingPackage() {
+        assertEquals(Arrays.asList(arrow, font), index.findMatches("packages/xg_appearance/", "app"));
+        assertEquals(Arrays.asList(play, pause), index.findMatches("packages/", "xg_appearance"));
+        assertEmpty(index.findMatches("packages/", ""));
+    }
+
+    public void testFindMatches_patternStartingInPackagePrefix() {
+        assertEquals(Arrays.asList(arrow), index.findMatches("Appearance/images/", "app"));
+        assertEquals(Arrays.asList(font), index.findMatches("/din", "app"));
+        assertEmpty(index.findMatches("Appearance/images/", "xg_appearance"));
+        assertEmpty(index.findMatches("appearance/arrow", "app"));
+    }
+}
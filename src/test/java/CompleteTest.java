@@ -1,5 +1,11 @@
 import com.intellij.codeInsight.completion.CompletionType;
+import com.intellij.codeInsight.lookup.LookupElement;
+import com.intellij.codeInsight.lookup.LookupElementPresentation;
+import com.intellij.openapi.application.WriteAction;
+import com.intellij.openapi.project.DumbServiceImpl;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import com.ixigua.completion.diagnostics.CompletionTimings;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Arrays;
@@ -60,7 +66,7 @@ public class CompleteTest extends BasePlatformTestCase {
                 "asset_in_Lib.png",
                 "othor_assets/some.xml"
         )));
-        assertEquals(19, strings.size());
+        assertEquals(24, strings.size());
     }
 
     public void testCompletionInLib() {
@@ -87,6 +93,53 @@ public class CompleteTest extends BasePlatformTestCase {
         assertEquals(5, strings.size());
     }
 
+    public void testCompletionFollowsAssetFileChanges() throws Exception {
+        myFixture.configureByFiles("flutter_asset_literal_test/lib/CompleteTestDataInDependency.dart");
+        myFixture.complete(CompletionType.BASIC, 1);
+        assertEquals(5, myFixture.getLookupElementStrings().size());
+
+        // The cached assets are patched instead of walking the folder again
+        VirtualFile images = myFixture.findFileInTempDir("xg_appearance/images");
+        WriteAction.runAndWait(() -> {
+            images.findChild("arrow_right.png").delete(this);
+            images.createChildData(this, "arrow_left.png");
+        });
+        myFixture.complete(CompletionType.BASIC, 1);
+        List<String> strings = myFixture.getLookupElementStrings();
+        assertNotNull(strings);
+        assertSameElements(strings,
+                "packages/xg_appearance/images/arrow_left.png",
+                "packages/xg_appearance/images/arrow_right_dark.png",
+                "packages/xg_appearance/images/check_selected.png",
+                "packages/xg_appearance/images/check_unselected.png",
+                "packages/xg_appearance/images/display_count_img.png");
+    }
+
+    public void testCompletionInDumbMode() {
+        myFixture.configureByFiles("flutter_asset_literal_test/lib/CompleteTestDataInDependency.dart");
+        DumbServiceImpl dumbService = DumbServiceImpl.getInstance(getProject());
+        dumbService.setDumb(true);
+        try {
+            myFixture.complete(CompletionType.BASIC, 1);
+            List<String> strings = myFixture.getLookupElementStrings();
+            assertNotNull(strings);
+            assertEquals(5, strings.size());
+        } finally {
+            dumbService.setDumb(false);
+        }
+    }
+
+    public void testCompletionRecordsTimings() {
+        CompletionTimings.reset();
+        myFixture.configureByFiles("flutter_asset_literal_test/lib/CompleteTestDataInDependency.dart");
+        myFixture.complete(CompletionType.BASIC, 1);
+        assertEquals(1, CompletionTimings.Stage.COMPLETION.getHistogram().getCount());
+        assertEquals(1, CompletionTimings.Stage.CONTEXT.getHistogram().getCount());
+        // one lookup in the package itself and one in xg_appearance
+        assertEquals(2, CompletionTimings.Stage.FILTERING.getHistogram().getCount());
+        assertTrue(CompletionTimings.report().contains("folder walk"));
+    }
+
     public void testCompletionForPreInstalledFont() {
         myFixture.configureByFiles("flutter_asset_literal_test/lib/CompleteTestDataForPreInstalledFont.dart");
         myFixture.complete(CompletionType.BASIC, 1);
@@ -97,6 +150,11 @@ public class CompleteTest extends BasePlatformTestCase {
                 "sans-serif-condensed",
                 "sans-serif-light",
                 "sans-serif-thin",
+                "sans-serif-medium",
+                "sans-serif-black",
+                "sans-serif-condensed-light",
+                "sans-serif-condensed-medium",
+                "sans-serif-smallcaps",
                 "San Francisco",
                 "Bangla Sangam MN",
                 "Devanagari Sangam MN",
@@ -113,7 +171,7 @@ public class CompleteTest extends BasePlatformTestCase {
                 "Tamil Sangam MN",
                 "Telugu Sangam MN"
         )));
-        assertEquals(19, strings.size());
+        assertEquals(24, strings.size());
     }
 
     public void testCompletionForPubspecFont() {
@@ -152,4 +210,71 @@ public class CompleteTest extends BasePlatformTestCase {
         assertNotNull(strings);
         assertEquals(0, strings.size());
     }
+
+    public void testCompletionForImageAssetArgument() {
+        myFixture.configureByFiles("flutter_asset_literal_test/lib/CompleteTestDataForImageAsset.dart");
+        myFixture.complete(CompletionType.BASIC, 1);
+        List<String> strings = myFixture.getLookupElementStrings();
+        assertNotNull(strings);
+        // fonts matching "DIN" are not offered for images
+        assertSameElements(strings, "assets/flr/loading.flr");
+    }
+
+    public void testCompletionForImageAssetNamedArgument() {
+        myFixture.configureByFiles("flutter_asset_literal_test/lib/CompleteTestDataForImageAssetNamedArgument.dart");
+        myFixture.complete(CompletionType.BASIC, 1);
+        List<String> strings = myFixture.getLookupElementStrings();
+        assertNotNull(strings);
+        // only the first positional argument of Image.asset is an asset
+        assertEquals(0, strings.size());
+    }
+
+    public void testCompletionForResolutionVariants() {
+        myFixture.configureByFiles("flutter_asset_literal_test/lib/CompleteTestDataForResolutionVariants.dart");
+        myFixture.complete(CompletionType.BASIC, 1);
+        List<String> strings = myFixture.getLookupElementStrings();
+        assertNotNull(strings);
+        // "assets/images/png/2.0x/lock.png" and "assets/images/png/3.0x/lock.png" are variants of lock.png
+        assertSameElements(strings, "assets/images/png/lock.png", "assets/images/png/unlock.png");
+        for (LookupElement element : myFixture.getLookupElements()) {
+            String typeText = LookupElementPresentation.renderElement(element).getTypeText();
+            if (element.getLookupString().equals("assets/images/png/lock.png")) {
+                assertEquals("1.0x 2.0x 3.0x", typeText);
+            } else {
+                assertNull(typeText);
+            }
+        }
+    }
+
+    public void testCompletionForFontFamilyArgument() {
+        myFixture.configureByFiles("flutter_asset_literal_test/lib/CompleteTestDataForFontFamily.dart");
+        myFixture.complete(CompletionType.BASIC, 1);
+        List<String> strings = myFixture.getLookupElementStrings();
+        assertNotNull(strings);
+        // files matching "DIN" are not offered for font families
+        assertSameElements(strings,
+                "packages/xg_appearance/DINAlternateBold",
+                "DINAlternateBold",
+                "DIN Alternate",
+                "DIN Condensed",
+                "Zapf Dingbats",
+                "packages/xg_appearance/DINAlternateNumber",
+                "packages/xg_appearance/DIN_Alternate");
+    }
+
+    public void testCompletionStringInsidePrint() {
+        myFixture.configureByFiles("flutter_asset_literal_test/lib/CompleteTestDataInsidePrint.dart");
+        myFixture.complete(CompletionType.BASIC, 1);
+        List<String> strings = myFixture.getLookupElementStrings();
+        assertNotNull(strings);
+        assertEquals(0, strings.size());
+    }
+
+    public void testCompletionForMapKey() {
+        myFixture.configureByFiles("flutter_asset_literal_test/lib/CompleteTestDataForMapKey.dart");
+        myFixture.complete(CompletionType.BASIC, 1);
+        List<String> strings = myFixture.getLookupElementStrings();
+        assertNotNull(strings);
+        assertEquals(0, strings.size());
+    }
 }
@@ -0,0 +1,37 @@
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import com.ixigua.completion.assets.AssetDeclarations;
+import com.ixigua.completion.index.PubspecDeclarationsIndex;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class PubspecDeclarationsIndexTest extends BasePlatformTestCase {
+
+    @NotNull
+    @Override
+    protected String getTestDataPath() {
+        return "src/test/testData";
+    }
+
+    public void testGetDeclarations() {
+        VirtualFile root = myFixture.copyDirectoryToProject("xg_appearance", "xg_appearance");
+        VirtualFile pubspec = root.findChild("pubspec.yaml");
+        assertNotNull(pubspec);
+        AssetDeclarations declarations = PubspecDeclarationsIndex.getDeclarations(getProject(), pubspec);
+        assertNotNull(declarations);
+        assertEquals("xg_appearance", declarations.getPackageName());
+        assertTrue(declarations.hasFlutterSection());
+        assertEquals(Collections.singletonList("images/"), declarations.getAssets());
+        assertEquals(Arrays.asList("DIN_Alternate", "DINAlternateBold", "DINAlternateNumber"), declarations.getFonts());
+    }
+
+    public void testFindPubspecs() {
+        VirtualFile root = myFixture.copyDirectoryToProject("xg_appearance", "xg_appearance");
+        GlobalSearchScope scope = GlobalSearchScope.projectScope(getProject());
+        assertSameElements(PubspecDeclarationsIndex.findPubspecs(getProject(), "xg_appearance", scope), root.findChild("pubspec.yaml"));
+        assertEmpty(PubspecDeclarationsIndex.findPubspecs(getProject(), "missing_package", scope));
+    }
+}
@@ -1,9 +1,15 @@
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.testFramework.exceptionCases.AbstractExceptionCase;
 import com.intellij.testFramework.fixtures.BasePlatformTestCase;
 import com.ixigua.completion.pubspec.PubspecUtil;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Collections;
+import java.util.Map;
+
 public class PubspecUtilTest extends BasePlatformTestCase {
     @NotNull
     @Override
@@ -181,6 +187,72 @@ public class PubspecUtilTest extends BasePlatformTestCase {
         assertEquals(expected.length(), edited.first.intValue());
     }
 
+    public void testGetPubspecYamlInfo_followsEdits() {
+        String content = "name: app\n" +
+                "flutter:\n" +
+                "  assets:\n" +
+                "    - images/\n" +
+                "dependencies:\n" +
+                "  foo: ^1.0.0\n";
+        VirtualFile pubspec = myFixture.configureByText("pubspec.yaml", content).getVirtualFile();
+        Document document = myFixture.getEditor().getDocument();
+        Map<String, Object> info = PubspecUtil.getPubspecYamlInfo(pubspec);
+        assertEquals("app", PubspecUtil.getPackageName(info));
+        assertEquals(Collections.singletonList("images/"), ((Map<?, ?>) info.get("flutter")).get("assets"));
+
+        // inside the "flutter" entry
+        replace(document, "images/", "icons/");
+        info = PubspecUtil.getPubspecYamlInfo(pubspec);
+        assertEquals(Collections.singletonList("icons/"), ((Map<?, ?>) info.get("flutter")).get("assets"));
+
+        // inside the "name" entry
+        replace(document, "name: app", "name: my_app");
+        assertEquals("my_app", PubspecUtil.getPackageName(PubspecUtil.getPubspecYamlInfo(pubspec)));
+
+        // in another entry
+        replace(document, "^1.0.0", "^2.0.0");
+        info = PubspecUtil.getPubspecYamlInfo(pubspec);
+        assertEquals("my_app", PubspecUtil.getPackageName(info));
+        assertEquals(Collections.singletonList("icons/"), ((Map<?, ?>) info.get("flutter")).get("assets"));
+
+        // a new top-level key
+        replace(document, "dependencies:", "flutter_icons:\n  image_path: a.png\ndependencies:");
+        info = PubspecUtil.getPubspecYamlInfo(pubspec);
+        assertTrue(info.containsKey("flutter_icons"));
+
+        // removes the "flutter" entry
+        replace(document, "flutter:\n  assets:\n    - icons/\n", "");
+        assertNull(PubspecUtil.getPubspecYamlInfo(pubspec).get("flutter"));
+    }
+
+    private void replace(@NotNull Document document, @NotNull String oldText, @NotNull String newText) {
+        int offset = document.getText().indexOf(oldText);
+        assertTrue(offset >= 0);
+        WriteCommandAction.runWriteCommandAction(getProject(), () -> document.replaceString(offset, offset + oldText.length(), newText));
+    }
+
+    public void testFindAllDependentPubspecFiles_packageConfig() {
+        myFixture.copyDirectoryToProject("project_with_package_config", "project_with_package_config");
+        myFixture.copyDirectoryToProject("xg_appearance", "xg_appearance");
+        VirtualFile pubspec = myFixture.findFileInTempDir("project_with_package_config/pubspec.yaml");
+        Map<String, VirtualFile> dependencies = PubspecUtil.findAllDependentPubspecFiles(pubspec);
+        assertSameElements(dependencies.keySet(), "xg_appearance", "missing_package", "project_with_package_config");
+        assertEquals(myFixture.findFileInTempDir("xg_appearance/pubspec.yaml"), dependencies.get("xg_appearance"));
+        assertNull(dependencies.get("missing_package"));
+        assertEquals(pubspec, dependencies.get("project_with_package_config"));
+        // parsed only once as long as the package config does not change
+        assertSame(dependencies, PubspecUtil.findAllDependentPubspecFiles(pubspec));
+    }
+
+    public void testFindAllDependentPubspecFiles_packages() {
+        myFixture.copyDirectoryToProject("flutter_asset_literal_test", "flutter_asset_literal_test");
+        myFixture.copyDirectoryToProject("xg_appearance", "xg_appearance");
+        VirtualFile pubspec = myFixture.findFileInTempDir("flutter_asset_literal_test/pubspec.yaml");
+        Map<String, VirtualFile> dependencies = PubspecUtil.findAllDependentPubspecFiles(pubspec);
+        assertSameElements(dependencies.keySet(), "xg_appearance", "flutter_asset_literal_test");
+        assertEquals(myFixture.findFileInTempDir("xg_appearance/pubspec.yaml"), dependencies.get("xg_appearance"));
+    }
+
 //    @NotNull
 //    public static Pair<Integer, String> insertAssets(@NotNull String pubspecContent, @NotNull String[] assets, @Nullable String lineSeparator) {
 //        int offset;
@@ -0,0 +1 @@
+var style = TextStyle(fontFamily: "DIN<caret>");
\ No newline at end of file
@@ -0,0 +1 @@
+var image = Image.asset("DIN<caret>");
\ No newline at end of file
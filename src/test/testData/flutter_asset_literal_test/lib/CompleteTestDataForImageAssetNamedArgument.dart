@@ -0,0 +1 @@
+var image = Image.asset("assets/flr/loading.flr", semanticLabel: "DIN<caret>");
\ No newline at end of file
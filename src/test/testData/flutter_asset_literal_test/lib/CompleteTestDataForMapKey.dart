@@ -0,0 +1 @@
+var json = {"asset<caret>": 1};
\ No newline at end of file
@@ -0,0 +1 @@
+var image = Image.asset("lock<caret>");
\ No newline at end of file
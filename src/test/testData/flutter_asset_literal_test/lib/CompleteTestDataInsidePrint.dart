@@ -0,0 +1,3 @@
+void main() {
+  print("asset<caret>");
+}
\ No newline at end of file